@@ -0,0 +1,515 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// An ExpandableBoard for games that only ever place a handful of
+// distinct symbols.  Each distinct symbol gets its own bitplane: a
+// long[] with one bit per cell, laid out row by row with every row
+// starting on a fresh word.  Runs are found by AND-ing a plane with
+// copies of itself shifted along a direction, which handles 64 cells
+// per operation instead of comparing elements one cell at a time.
+// The shifts double in length, so a run of L cells takes O(log L)
+// passes over the plane.
+//
+// The planes have spare rows and words around the extent.  When an
+// expansion runs out of them the planes are reallocated at twice the
+// new extent in that dimension with the extent centered, as
+// DenseBoard does, so growth one row or column at a time is cheap.
+//
+// Space Complexity: O(S * R * C / 64)
+//   S: number of distinct symbols set
+//   R: number of rows
+//   C: number of columns
+public class BitBoard<T> implements SequenceBoard<T>{
+
+	//Extent of the board
+	private int minRow, maxRow, minCol, maxCol;
+	//Planes hold capRows rows of rowWords words; bit b of word w of row
+	//r is the cell originRow+r, originCol+64*w+b
+	private int originRow, originCol, capRows, rowWords;
+	//holds fill element
+	private T fillElem;
+	//Distinct symbols and their bitplanes; symbols.get(i) owns planes.get(i)
+	private ArrayList<T> symbols = new ArrayList<T>();
+	private ArrayList<long[]> planes = new ArrayList<long[]>();
+	//Scratch planes reused by the run searches; powers.get(j) marks
+	//the cells starting a run of at least 2^j
+	private long[] runs, shifted, starts;
+	private ArrayList<long[]> powers = new ArrayList<long[]>();
+	//History of sets for undo/redo
+	private MoveLog<T> history = new MoveLog<T>();
+	//Longest sequence found by the last search, null once a set, undo
+	//or redo may have changed it
+	private SequenceView<T> longestView = null;
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
+
+  // Workhorse constructor, create initial space indicated by min/max
+  // row/col. Initially any get() should return the fillElem
+  // specified.  The fillElem cannot be null: passing null for this
+  // parameter will result in a RuntimeException with the message
+  // "Cannot set elements to null"
+  public BitBoard(int minRow, int maxRow, int minCol, int maxCol, T fillElem){
+	  if (fillElem == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  this.fillElem = fillElem;
+	  this.minRow = minRow;
+	  this.maxRow = maxRow;
+	  this.minCol = minCol;
+	  this.maxCol = maxCol;
+	  originRow = minRow;
+	  originCol = minCol;
+	  capRows = maxRow-minRow+1;
+	  rowWords = wordsFor(maxCol-minCol+1);
+	  allocateScratch();
+  }
+
+  // Convenience 1-arg constructor, creates a single cell board with
+  // given fill element at 0,0.
+  public BitBoard(T fillElem){
+	  this(0,0,0,0,fillElem);
+  }
+
+  // Convenience 2-arg constructor, creates a board with given fill
+  // element and copies elements from T 2-D array. Assumes upper left
+  // is coordinate 0,0 and lower right is size of 2-D array. The copied
+  // elements are not part of the undo history.
+  public BitBoard(T[][] x, T fillElem){
+	  this(0,x.length-1,0,x[0].length-1,fillElem);
+	  for (int i=0; i<x.length; i++){
+		  for (int j=0; j<x[i].length; j++){
+			  if (!x[i][j].equals(fillElem))
+				  setBit(planeFor(x[i][j]), i, j);
+		  }
+	  }
+  }
+
+  // Access the extent of the board
+  public int getMinRow(){
+	  return minRow;
+  }
+
+  public int getMaxRow(){
+	  return maxRow;
+  }
+
+  public int getMinCol(){
+	  return minCol;
+  }
+
+  public int getMaxCol(){
+	  return maxCol;
+  }
+
+  // Retrieve the fill element for the board.
+  public T getFillElem(){
+	  return fillElem;
+  }
+
+  // Change the fill element for the board. Empty cells have no bit
+  // set in any plane so only the field changes.
+  public void setFillElem(T f){
+	  if (f == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  fillElem = f;
+  }
+
+  // Number of longs needed for n bits
+  private static int wordsFor(int n){
+	  return (n + 63) >>> 6;
+  }
+
+  // Number of longs in one plane
+  private int planeWords(){
+	  return capRows*rowWords;
+  }
+
+  private void allocateScratch(){
+	  runs = new long[planeWords()];
+	  shifted = new long[planeWords()];
+	  starts = new long[planeWords()];
+	  powers.clear();
+  }
+
+  // Scratch plane for the starts of runs of at least 2^j
+  private long[] power(int j){
+	  while (powers.size() <= j){
+		  powers.add(new long[planeWords()]);
+	  }
+	  return powers.get(j);
+  }
+
+  // Word holding row/col and the mask of its bit. row/col must be in
+  // the extent.
+  private int wordIndex(int row, int col){
+	  return (row-originRow)*rowWords + ((col-originCol) >>> 6);
+  }
+
+  private long bitMask(int col){
+	  return 1L << ((col-originCol) & 63);
+  }
+
+  private void setBit(long[] plane, int row, int col){
+	  plane[wordIndex(row,col)] |= bitMask(col);
+  }
+
+  private void clearBit(long[] plane, int row, int col){
+	  plane[wordIndex(row,col)] &= ~bitMask(col);
+  }
+
+  // Rows and words of a plane that hold the extent
+  private int firstRow(){
+	  return minRow-originRow;
+  }
+  private int lastRow(){
+	  return maxRow-originRow;
+  }
+  private int firstWord(){
+	  return (minCol-originCol) >>> 6;
+  }
+  private int lastWord(){
+	  return (maxCol-originCol) >>> 6;
+  }
+
+  // Plane for symbol x, creating one if x has not been seen before
+  private long[] planeFor(T x){
+	  int s = symbols.indexOf(x);
+	  if (s < 0){
+		  symbols.add(x);
+		  planes.add(new long[planeWords()]);
+		  s = symbols.size()-1;
+	  }
+	  return planes.get(s);
+  }
+
+  // Retrieve an element at virtual row/col specified. Cells outside
+  // the extent or whose bit is clear in every plane hold the fill
+  // element.
+  //
+  // Complexity: O(S)
+  //   S: number of distinct symbols set
+  public T get(int row, int col){
+	  T x = symbolAt(row,col);
+	  if (x == null)
+		  return fillElem;
+	  return x;
+  }
+
+  // Symbol whose plane has the bit for row/col set, or null if the
+  // cell is empty or outside the extent
+  private T symbolAt(int row, int col){
+	  if (!inExtent(row,col))
+		  return null;
+	  int w = wordIndex(row,col);
+	  long mask = bitMask(col);
+	  for (int s=0; s<planes.size(); s++){
+		  if ((planes.get(s)[w] & mask) != 0)
+			  return symbols.get(s);
+	  }
+	  return null;
+  }
+
+  // Set give element at row/col position to be x. Expand the board if
+  // needed.  Once an element is set, it cannot be set again; attempts
+  // to do so raise a runtime exception with the message:
+  // "Element 4 -2 already set to XX".  Setting an element to the fill
+  // element of board has no effect on the board.  Setting null
+  // raises a RuntimeException with the message "Cannot set elements
+  // to null"
+  //
+  // Target Complexity: O(S) (plus any expansion)
+  public void set(int row, int col, T x){
+	  if (x == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  if (x.equals(fillElem))
+		  return;
+	  T prev = symbolAt(row,col);
+	  if (prev != null){
+		  throw new RuntimeException(String.format("Element %d %d already set to ",
+				  row, col)+prev.toString());
+	  }
+	  expandToInclude(row,col);
+	  setBit(planeFor(x), row, col);
+	  history.push(row, col, x, null);
+	  longestView = null;
+  }
+
+  private boolean inExtent(int row, int col){
+	  return (row>=minRow)&&(row<=maxRow)&&(col>=minCol)&&(col<=maxCol);
+  }
+
+  // Expand the extent to include row/col and return the number of
+  // cells added to it.  If the planes have no room left for it in a
+  // dimension they are reallocated at twice the new extent in that
+  // dimension, keeping the bits already set.
+  //
+  // Target Complexity: O(N) (amortized)
+  //   N: number of cells added to the extent
+  public int expandToInclude(int row, int col){
+	  if (inExtent(row,col))
+		  return 0;
+	  long before = (long)(maxRow-minRow+1)*(maxCol-minCol+1);
+	  int newMinRow = Math.min(minRow,row), newMaxRow = Math.max(maxRow,row);
+	  int newMinCol = Math.min(minCol,col), newMaxCol = Math.max(maxCol,col);
+	  if ((newMinRow < originRow)||(newMaxRow >= originRow+capRows)
+			  ||(newMinCol < originCol)||(newMaxCol >= originCol + 64*rowWords))
+		  regrow(newMinRow, newMaxRow, newMinCol, newMaxCol);
+	  minRow = newMinRow;
+	  maxRow = newMaxRow;
+	  minCol = newMinCol;
+	  maxCol = newMaxCol;
+	  long after = (long)(maxRow-minRow+1)*(maxCol-minCol+1);
+	  return (int) Math.min(Integer.MAX_VALUE, after-before);
+  }
+
+  // Reallocate the planes so that rows r0..r1 and cols c0..c1 fit,
+  // leaving as much room again around them in each dimension that did
+  // not fit. The columns move by whole words so each row of the extent
+  // is copied with one arraycopy.
+  private void regrow(int r0, int r1, int c0, int c1){
+	  int newCapRows = capRows, newOriginRow = originRow;
+	  if ((r0 < originRow)||(r1 >= originRow+capRows)){
+		  int need = r1-r0+1;
+		  newCapRows = 2*need;
+		  newOriginRow = r0 - (newCapRows-need)/2;
+	  }
+	  int newRowWords = rowWords, newOriginCol = originCol;
+	  int first = Math.floorDiv(c0-originCol, 64), last = Math.floorDiv(c1-originCol, 64);
+	  if ((first < 0)||(last >= rowWords)){
+		  int need = last-first+1;
+		  newRowWords = 2*need;
+		  newOriginCol = originCol + 64*(first - (newRowWords-need)/2);
+	  }
+	  int rowShift = originRow-newOriginRow, wordShift = (originCol-newOriginCol) >> 6;
+	  int w0 = firstWord(), words = lastWord()-w0+1;
+	  for (int s=0; s<planes.size(); s++){
+		  long[] oldPlane = planes.get(s);
+		  long[] plane = new long[newCapRows*newRowWords];
+		  for (int r=firstRow(); r<=lastRow(); r++){
+			  System.arraycopy(oldPlane, r*rowWords + w0,
+					  plane, (r+rowShift)*newRowWords + w0+wordShift, words);
+		  }
+		  planes.set(s, plane);
+	  }
+	  originRow = newOriginRow;
+	  originCol = newOriginCol;
+	  capRows = newCapRows;
+	  rowWords = newRowWords;
+	  allocateScratch();
+  }
+
+  // Store in dst the plane src moved so that the bit for cell (r,c)
+  // holds the bit src had for (r+dRow, c+dCol), over the rows and words
+  // of the extent. Bits moved in from beyond them are clear.
+  private void shift(long[] src, long[] dst, int dRow, int dCol){
+	  int r0 = firstRow(), r1 = lastRow(), w0 = firstWord(), w1 = lastWord();
+	  int q = Math.floorDiv(dCol, 64), bits = Math.floorMod(dCol, 64);
+	  for (int r=r0; r<=r1; r++){
+		  int base = r*rowWords;
+		  long from = (long) r + dRow;
+		  if ((from < r0)||(from > r1)){
+			  for (int w=w0; w<=w1; w++){
+				  dst[base+w] = 0;
+			  }
+			  continue;
+		  }
+		  int fromBase = (int) from*rowWords;
+		  for (int w=w0; w<=w1; w++){
+			  long lo = word(src, fromBase, (long) w+q, w0, w1);
+			  long hi = (bits == 0) ? 0 : word(src, fromBase, (long) w+q+1, w0, w1);
+			  dst[base+w] = (bits == 0) ? lo : (lo >>> bits) | (hi << (64-bits));
+		  }
+	  }
+  }
+
+  // Word w of the row starting at base, or 0 outside words w0..w1
+  private static long word(long[] plane, int base, long w, int w0, int w1){
+	  return ((w < w0)||(w > w1)) ? 0 : plane[base+(int) w];
+  }
+
+  // Store a AND b in dst over the extent and report whether any bit is
+  // set
+  private boolean andInto(long[] dst, long[] a, long[] b){
+	  long any = 0;
+	  int w0 = firstWord(), w1 = lastWord();
+	  for (int r=firstRow(); r<=lastRow(); r++){
+		  for (int w=r*rowWords+w0; w<=r*rowWords+w1; w++){
+			  dst[w] = a[w] & b[w];
+			  any |= dst[w];
+		  }
+	  }
+	  return any != 0;
+  }
+
+  // Length of the longest run of plane in direction dRow/dCol, or limit
+  // if that is shorter. powers 2^j are found by doubling, each AND-ing
+  // the one before with itself shifted 2^(j-1) cells, until none is
+  // left; the length is then built up from the largest power down,
+  // adding 2^k whenever some run of the length so far goes on for 2^k
+  // more cells. If startOut is not null the row/col of the first start
+  // of a run of that length in row-major order is stored in it.
+  //
+  // Target Complexity: O(log K * R*C/64)
+  //   K: length of the run
+  private int longestRun(long[] plane, int dRow, int dCol, int limit, int[] startOut){
+	  if (!andInto(power(0), plane, plane))
+		  return 0;
+	  int j = 0;
+	  while ((2L << j) <= limit){
+		  shift(power(j), shifted, dRow << j, dCol << j);
+		  if (!andInto(power(j+1), power(j), shifted))
+			  break;
+		  j++;
+	  }
+	  int length = 1 << j;
+	  long[] cur = runs, next = starts;
+	  andInto(cur, power(j), power(j));
+	  for (int k=j-1; k>=0; k--){
+		  if ((long) length + (1 << k) > limit)
+			  continue;
+		  //runs of length from a cell, then 2^k more from the cell after
+		  shift(power(k), shifted, dRow*length, dCol*length);
+		  if (andInto(next, cur, shifted)){
+			  long[] t = cur;
+			  cur = next;
+			  next = t;
+			  length += 1 << k;
+		  }
+	  }
+	  if (startOut != null)
+		  firstBit(cur, startOut);
+	  return length;
+  }
+
+  // Store the row/col of the first set bit of plane in the extent in
+  // out
+  private void firstBit(long[] plane, int[] out){
+	  int w0 = firstWord(), w1 = lastWord();
+	  for (int r=firstRow(); r<=lastRow(); r++){
+		  for (int w=w0; w<=w1; w++){
+			  long x = plane[r*rowWords+w];
+			  if (x != 0){
+				  out[0] = originRow + r;
+				  out[1] = originCol + (w << 6) + Long.numberOfTrailingZeros(x);
+				  return;
+			  }
+		  }
+	  }
+  }
+
+  // Return true if some symbol has a run of at least length cells in
+  // any direction. Stops as soon as one is found, which makes it the
+  // cheap way to check for a win.
+  //
+  // Target Complexity: O(S * log(length) * R*C/64)
+  public boolean hasSequence(int length){
+	  for (int s=0; s<planes.size(); s++){
+		  for (int d=0; d<DIRECTIONS.length; d++){
+			  if (longestRun(planes.get(s), DIRECTIONS[d][0], DIRECTIONS[d][1],
+					  length, null) >= length)
+				  return true;
+		  }
+	  }
+	  return false;
+  }
+
+  // Retrieve the longest sequence present on the board. If there is a
+  // tie, the sequence found first is returned: planes in the order
+  // their symbols were first set, directions horizontal, vertical,
+  // diagonal, reverse diagonal, and starts in row-major order. The
+  // returned list is a fresh copy.
+  //
+  // Target Complexity: O(S * log L * R*C/64)
+  //   L: length of the longest sequence
+  public List< RowColElem<T> > getLongestSequence(){
+	  return getLongestView().toList();
+  }
+
+  // The longest sequence as a SequenceView, the same sequence
+  // getLongestSequence() lists. The search is only run again after a
+  // set, undo or redo.
+  //
+  // Target Complexity: O(S * log L * R*C/64), O(1) when nothing changed
+  public SequenceView<T> getLongestView(){
+	  if (longestView != null)
+		  return longestView;
+	  int bestLength = 0, bestDir = 0;
+	  T bestElem = null;
+	  int[] start = new int[2], bestStart = new int[2];
+	  for (int s=0; s<planes.size(); s++){
+		  for (int d=0; d<DIRECTIONS.length; d++){
+			  int length = longestRun(planes.get(s), DIRECTIONS[d][0], DIRECTIONS[d][1],
+					  Integer.MAX_VALUE, start);
+			  if (length > bestLength){
+				  bestLength = length;
+				  bestDir = d;
+				  bestElem = symbols.get(s);
+				  bestStart[0] = start[0];
+				  bestStart[1] = start[1];
+			  }
+		  }
+	  }
+	  longestView = new SequenceView<T>(bestStart[0], bestStart[1], DIRECTIONS[bestDir][0],
+			  DIRECTIONS[bestDir][1], bestLength, bestElem);
+	  return longestView;
+  }
+
+  // Undo the last explicit set. The extent does not shrink. If there
+  // are no sets to undo, this method throws a runtime exception with
+  // the message "Undo history is empty"
+  //
+  // Target Complexity: O(S)
+  public void undoSet(){
+	  int slot = history.undo();
+	  clearBit(planes.get(symbols.indexOf(history.elem(slot))),
+			  history.row(slot), history.col(slot));
+	  longestView = null;
+  }
+
+  // Redo a set that was undone via undoSet(). If there is nothing to
+  // redo this method throws a RuntimeException with the message
+  // "Redo history is empty".
+  //
+  // Target Complexity: O(S)
+  public void redoSet(){
+	  int slot = history.redo();
+	  setBit(planeFor(history.elem(slot)), history.row(slot), history.col(slot));
+	  longestView = null;
+  }
+
+  // Limit the number of sets kept for undoSet() to maxMoves, dropping
+  // the oldest ones once the limit is reached. A limit of 0 keeps
+  // every set.
+  public void setHistoryLimit(int maxMoves){
+	  history.setLimit(maxMoves);
+  }
+
+  // toString() - create a pretty representation of board in the same
+  // format as DenseBoard.
+  //
+  // Target Complexity: O(S*R*C)
+  public String toString(){
+	  StringBuilder builder = new StringBuilder();
+	  builder.append("    |");
+	  for (int j=minCol; j<=maxCol; j++){
+		  builder.append(String.format("%1$3d|", j));
+	  }
+	  builder.append("\n    +");
+	  for (int j=minCol; j<=maxCol; j++){
+		  builder.append("---+");
+	  }
+	  for (int i=minRow; i<=maxRow; i++){
+		  builder.append("\n");
+		  builder.append(String.format("%1$3d |",i));
+		  for (int j=minCol; j<=maxCol; j++){
+			  builder.append(String.format("%1$3s|", get(i,j)));
+		  }
+		  builder.append("\n    +");
+		  for (int j=minCol; j<=maxCol; j++){
+			  builder.append("---+");
+		  }
+	  }
+	  builder.append("\n");
+	  return builder.toString();
+  }
+
+}
@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Arrays;
+
+// A PrimitiveBoard for archives of large boards with few distinct
+// elements: each element gets a one byte code from a palette of up to
+// 255 elements and the cells are a byte[], one byte per cell.
+//
+// rescan() searches the whole board for its longest sequence a row at
+// a time.  Each pair of neighbouring rows is compared in all four
+// directions with ByteRuns, which turns a row of cells into a bitmask
+// of the cells equal to their neighbour, 32 or 64 cells per vector
+// instruction with the Vector API or 8 per long without it.  Runs are
+// then read off the bitmasks: along a row as runs of set bits, and
+// down the columns and diagonals by carrying the row where each chain
+// of set bits started, so the work per row is a handful of word
+// operations plus one step per run that starts or ends.
+//
+// The Vector API kernel is used when VectorByteRuns is on the
+// classpath and the JVM runs with --add-modules jdk.incubator.vector,
+// unless the system property ByteBoard.scalar is true.
+//
+// Space Complexity: O(R * C + M)
+//   M: number of sets in the history
+public class ByteBoard<T> extends PrimitiveBoard<T>{
+
+	//Cells of the storage: 0 for empty, otherwise 1 + palette index
+	private byte[] cells;
+	//Palette: symbols.get(code-1) has code
+	private ArrayList<T> symbols = new ArrayList<T>();
+	private HashMap<T,Integer> codes = new HashMap<T,Integer>();
+	private static final int EMPTY = 0, MAX_SYMBOLS = 255;
+	//Row comparisons used by rescan()
+	private static final ByteRuns RUNS = loadRuns();
+
+  // Workhorse constructor, create initial space indicated by min/max
+  // row/col. The fillElem cannot be null: passing null for this
+  // parameter will result in a RuntimeException with the message
+  // "Cannot set elements to null"
+  public ByteBoard(int minRow, int maxRow, int minCol, int maxCol, T fillElem){
+	  super(minRow, maxRow, minCol, maxCol, fillCode(fillElem), EMPTY);
+	  symbols.add(fillElem);
+	  codes.put(fillElem, 1);
+  }
+
+  // Convenience 1-arg constructor, creates a single cell board at 0,0
+  public ByteBoard(T fillElem){
+	  this(0,0,0,0,fillElem);
+  }
+
+  // Convenience 2-arg constructor, copies the elements of x with the
+  // upper left at 0,0 and finds the longest sequence with rescan().
+  // The copied elements are not part of the undo history.
+  public ByteBoard(T[][] x, T fillElem){
+	  this(0,x.length-1,0,x[0].length-1,fillElem);
+	  for (int i=0; i<x.length; i++){
+		  for (int j=0; j<x[i].length; j++){
+			  if (x[i][j] == null)
+				  throw new RuntimeException("Cannot set elements to null");
+			  storeInitial(i, j, unbox(x[i][j]));
+		  }
+	  }
+	  rescanLongest();
+  }
+
+  // Code of the fill element passed to a constructor, always the first
+  // of the palette
+  private static int fillCode(Object fillElem){
+	  if (fillElem == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  return 1;
+  }
+
+  // The Vector API kernel if it can be loaded, otherwise the scalar one
+  private static ByteRuns loadRuns(){
+	  if (Boolean.getBoolean("ByteBoard.scalar"))
+		  return new ScalarByteRuns();
+	  try{
+		  return (ByteRuns) Class.forName("VectorByteRuns").getConstructor().newInstance();
+	  }
+	  catch (ReflectiveOperationException | LinkageError e){
+		  return new ScalarByteRuns();
+	  }
+  }
+
+  // Name of the ByteRuns class rescan() uses
+  public static String scanKernel(){
+	  return RUNS.getClass().getName();
+  }
+
+  protected void allocate(int n){
+	  cells = new byte[n];
+  }
+
+  protected Object grid(){
+	  return cells;
+  }
+
+  protected int code(int index){
+	  return cells[index] & 0xFF;
+  }
+
+  protected void store(int index, int code){
+	  cells[index] = (byte) code;
+  }
+
+  protected T box(int code){
+	  return (code == EMPTY) ? null : symbols.get(code-1);
+  }
+
+  // Code of x, adding it to the palette the first time it is seen. A
+  // palette holds at most 255 elements.
+  protected int unbox(T x){
+	  Integer code = codes.get(x);
+	  if (code != null)
+		  return code;
+	  if (symbols.size() == MAX_SYMBOLS)
+		  throw new RuntimeException("ByteBoard holds at most "+MAX_SYMBOLS+" distinct elements");
+	  symbols.add(x);
+	  codes.put(x, symbols.size());
+	  return symbols.size();
+  }
+
+  // Search the whole board again for its longest sequence, replacing
+  // the one tracked by set(), undoSet() and redoSet().  Of runs of the
+  // same length the one starting first in row-major order wins, then
+  // the first direction of horizontal, vertical, diagonal and reverse
+  // diagonal, the same sequence DenseBoard.rescan() finds.  The undo
+  // history is not changed.
+  //
+  // Target Complexity: O(R*C/V + N)
+  //   V: cells compared per instruction
+  //   N: number of runs of equal elements
+  public void rescan(){
+	  rescanLongest();
+  }
+
+  // The search of rescan(), also used after filling a board from an
+  // array
+  protected void rescanLongest(){
+	  int minRow = getMinRow(), maxRow = getMaxRow(), minCol = getMinCol(), maxCol = getMaxCol();
+	  int nCols = maxCol-minCol+1;
+	  Best best = new Best();
+	  long[] row = new long[(nCols+63) >>> 6];
+	  //horizontal runs, bit k: col minCol+k equals col minCol+k+1
+	  for (int i=minRow; i<=maxRow; i++){
+		  int a = index(i,minCol);
+		  RUNS.equalRow(cells, a, a+1, nCols-1, row);
+		  horizontalRuns(row, i, minCol, best);
+	  }
+	  //chains down the columns and diagonals; bit k of row pair i pairs
+	  //cell i,c with the cell in the next row, c being minCol+k for
+	  //vertical and diagonal and minCol+1+k for reverse diagonal
+	  if (maxRow > minRow){
+		  for (int dir=1; dir<4; dir++){
+			  chains(dir, best);
+		  }
+	  }
+	  if (best.length == 0)
+		  firstElement(best);
+	  setLongest(best.row, best.col, best.dir, best.length,
+			  (best.length == 0) ? EMPTY : code(index(best.row, best.col)));
+  }
+
+  // Longest run found by rescanLongest() so far
+  private static class Best{
+	  int length = 0, row, col, dir;
+
+	  // Keep run length/row/col/dir if it is longer, or as long and
+	  // first in row-major order then direction order
+	  void offer(int length, int row, int col, int dir){
+		  if (length > this.length || (length == this.length
+				  && (row < this.row || (row == this.row
+				  && (col < this.col || (col == this.col && dir < this.dir)))))){
+			  this.length = length;
+			  this.row = row;
+			  this.col = col;
+			  this.dir = dir;
+		  }
+	  }
+  }
+
+  // Offer the runs of equal cells of row i, given the bitmask of cells
+  // equal to the next one: k set bits from bit s are a run of k+1
+  // cells from col minCol+s.
+  private static void horizontalRuns(long[] mask, int i, int minCol, Best best){
+	  int start = -1;
+	  for (int w=0; w<mask.length; w++){
+		  long x = mask[w];
+		  int pos = 0;
+		  while (pos < 64){
+			  long y = x >>> pos;
+			  if (start < 0){
+				  if (y == 0)
+					  break;
+				  pos += Long.numberOfTrailingZeros(y);
+				  start = (w << 6) + pos;
+			  }
+			  else{
+				  pos += Math.min(Long.numberOfTrailingZeros(~y), 64-pos);
+				  if (pos < 64){
+					  best.offer((w << 6) + pos - start + 1, i, minCol+start, 0);
+					  start = -1;
+				  }
+			  }
+		  }
+	  }
+	  if (start >= 0)
+		  best.offer((mask.length << 6) - start + 1, i, minCol+start, 0);
+  }
+
+  // Offer the runs in direction dir, 1 to 3, found by following chains
+  // of set bits through the bitmasks of each pair of rows.  A chain
+  // starts where a bit is set without the matching bit of the row pair
+  // above and ends where a set bit has no matching bit below; the row
+  // it started in is kept per line of cells, a column or a diagonal.
+  private void chains(int dir, Best best){
+	  int minRow = getMinRow(), maxRow = getMaxRow(), minCol = getMinCol(), maxCol = getMaxCol();
+	  int nCols = maxCol-minCol+1;
+	  int n = (dir == 1) ? nCols : nCols-1;
+	  int words = (nCols+63) >>> 6;
+	  long[] prev = new long[words], cur = new long[words], shifted = new long[words];
+	  //start row of the chain on each line, by line number
+	  int[] startRow = new int[(dir == 1) ? nCols : nCols + (maxRow-minRow+1)];
+	  for (int i=minRow; i<=maxRow; i++){
+		  if (i < maxRow){
+			  int a = index(i,minCol), b = index(i+1,minCol);
+			  if (dir == 2)
+				  b++;
+			  else if (dir == 3)
+				  a++;
+			  RUNS.equalRow(cells, a, b, n, cur);
+		  }
+		  else
+			  Arrays.fill(cur, 0);
+		  //chains ending: set in prev, the matching bit of cur clear
+		  align(cur, shifted, (dir == 2) ? -1 : (dir == 3) ? 1 : 0, n);
+		  for (int w=0; w<words; w++){
+			  long ends = prev[w] & ~shifted[w];
+			  while (ends != 0){
+				  int k = (w << 6) + Long.numberOfTrailingZeros(ends);
+				  ends &= ends-1;
+				  int s = startRow[line(dir, k, i-1, minRow, maxRow)];
+				  best.offer(i - s + 1, s, startCol(dir, k, i-1, s, minCol), dir);
+			  }
+		  }
+		  //chains starting: set in cur, the matching bit of prev clear
+		  align(prev, shifted, (dir == 2) ? 1 : (dir == 3) ? -1 : 0, n);
+		  for (int w=0; w<words; w++){
+			  long starts = cur[w] & ~shifted[w];
+			  while (starts != 0){
+				  int k = (w << 6) + Long.numberOfTrailingZeros(starts);
+				  starts &= starts-1;
+				  startRow[line(dir, k, i, minRow, maxRow)] = i;
+			  }
+		  }
+		  long[] t = prev;
+		  prev = cur;
+		  cur = t;
+	  }
+  }
+
+  // Store in out the bits of mask moved up by shift bits, or down if
+  // shift is negative, keeping only the first n.
+  private static void align(long[] mask, long[] out, int shift, int n){
+	  int words = mask.length;
+	  for (int w=0; w<words; w++){
+		  if (shift == 0)
+			  out[w] = mask[w];
+		  else if (shift > 0)
+			  out[w] = (mask[w] << 1) | ((w > 0) ? mask[w-1] >>> 63 : 0);
+		  else
+			  out[w] = (mask[w] >>> 1) | ((w+1 < words) ? mask[w+1] << 63 : 0);
+	  }
+	  if ((n & 63) != 0 && ((n-1) >>> 6) < words)
+		  out[(n-1) >>> 6] &= -1L >>> (64 - (n & 63));
+	  for (int w=((n+63) >>> 6); w<words; w++){
+		  out[w] = 0;
+	  }
+  }
+
+  // Line of cells holding bit k of row pair i in direction dir: the
+  // column for vertical, the diagonal for the others, numbered from 0
+  private static int line(int dir, int k, int i, int minRow, int maxRow){
+	  if (dir == 1)
+		  return k;
+	  if (dir == 2)
+		  return k - (i-minRow) + (maxRow-minRow);
+	  return k + 1 + (i-minRow);
+  }
+
+  // Column in row s of the line through bit k of row pair i
+  private static int startCol(int dir, int k, int i, int s, int minCol){
+	  if (dir == 1)
+		  return minCol+k;
+	  if (dir == 2)
+		  return minCol+k - (i-s);
+	  return minCol+1+k + (i-s);
+  }
+
+  // With no two equal neighbours the longest sequence is the first
+  // element in row-major order on its own
+  private void firstElement(Best best){
+	  int nCols = getMaxCol()-getMinCol()+1;
+	  long[] row = new long[(nCols+63) >>> 6];
+	  for (int i=getMinRow(); i<=getMaxRow(); i++){
+		  RUNS.setRow(cells, index(i,getMinCol()), nCols, row);
+		  for (int w=0; w<row.length; w++){
+			  if (row[w] != 0){
+				  best.offer(1, i, getMinCol() + (w << 6) + Long.numberOfTrailingZeros(row[w]), 0);
+				  return;
+			  }
+		  }
+	  }
+  }
+
+}
@@ -0,0 +1,20 @@
+// Comparisons of runs of cells of a byte[] grid, made a row at a time
+// so they can use the vector units of the CPU.  ByteBoard uses
+// VectorByteRuns, built from the vector directory, when the JVM can
+// load it and ScalarByteRuns otherwise.
+public interface ByteRuns{
+
+  // equalRow(cells,a,b,n,out)
+  //
+  // Set bit k of out, for k < n, when cells[a+k] equals cells[b+k] and
+  // is not 0, bit k being bit k%64 of out[k/64].  All other bits of the
+  // first (n+63)/64 words of out are cleared.
+  public void equalRow(byte[] cells, int a, int b, int n, long[] out);
+
+  // setRow(cells,a,n,out)
+  //
+  // Set bit k of out, for k < n, when cells[a+k] is not 0, clearing
+  // the other bits of the first (n+63)/64 words of out.
+  public void setRow(byte[] cells, int a, int n, long[] out);
+
+}
@@ -1,20 +1,43 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
 
-public class DenseBoard<T> implements ExpandableBoard<T>{
+public class DenseBoard<T> implements RangeBoard<T>, BatchBoard<T>, SequenceBoard<T>, RenderBoard<T>{
 	
 	//Sets up variables to be used throughout the methods
 	private int minRow, maxRow, minCol, maxCol;
 	//holds fill element
 	private T fillElem;
-	//Stacks used to store undos and redos
-	private Stack<RowColElem<T>> undoStack=new Stack<RowColElem<T>>(),
-			redoStack=new Stack<RowColElem<T>>();
-	//Board arraylist of arraylists
+	//History of sets for undo/redo. Each move's note is the longest
+	//sequence before it was made.
+	private MoveLog<T> history = new MoveLog<T>();
+	//Board arraylist of arraylists. Storage may be larger than the
+	//extent so the board can grow in any direction without shifting.
 	private ArrayList<ArrayList<T>> rows = new ArrayList<ArrayList<T>>();
+	//Physical index of virtual row 0 in rows and of virtual col 0 in
+	//each row. Both may be negative or beyond the storage.
+	private int rowOrigin, colOrigin;
+	//Zobrist hash of the elements that are set, see positionHash()
+	private long hash = 0;
+	//Threat patterns if trackThreats() was called, otherwise null
+	private ThreatIndex<T> threats = null;
 	//Longest sequence
 	List<RowColElem<T>> longest = new ArrayList<RowColElem<T>>();
+	//View of longest, see getLongestView()
+	private SequenceView<T> longestView = null;
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
 	
 	
 	
@@ -40,59 +63,34 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   	if (fillElem == null)
   		throw new RuntimeException("Cannot set elements to null");
   	//populates board will nulls
+  	rowOrigin = -minRow;
+  	colOrigin = -minCol;
   	for (int i=0; i<=maxRow-minRow; i++){
-	  	ArrayList<T> cols = new ArrayList<T>();
-	  	for (int j=0; j<=maxCol-minCol; j++){
-			cols.add(null);
-	  	}
-  	
-  		rows.add(cols);
+  		rows.add(emptyRow(maxCol-minCol+1));
   	}
-  		//rows.set(i, cols);
   }
   // Convenience 1-arg constructor, creates a single cell board with
   // given fill element. The initial extent of the board is a single
   // element at 0,0 that is empty.  May wish to call the first
   // constructor in this one to minize code duplication.
   public DenseBoard(T fillElem) {
-	minRow = 0;
-	maxRow = 0;
-	minCol = 0;
-	maxCol = 0;
-	//Makes sure fillElem isn't null
-	if (fillElem == null){
-		throw new RuntimeException("Cannot set elements to null");
-	}
 	//Creates 1x1 board
-	this.fillElem = fillElem;
-	ArrayList<T> cols = new ArrayList<T>();
-	cols.add(null);
-	rows.add(cols);
+	this(0,0,0,0,fillElem);
   }
 
   // Convenience 2-arg constructor, creates a board with given fill
   // element and copies elements from T 2-D array. Assumes upper left
   // is coordinate 0,0 and lower right is size of 2-D array
   public DenseBoard(T[][] x, T fillElem){
-	  minRow = 0;
-	  minCol = 0;
-	  maxCol = x[0].length-1;
-	  maxRow = x.length-1;
-	  //Makes sure fillElem isn't null
-	  if (fillElem==null)
-		  throw new RuntimeException("Cannot set elements to null");
-	  this.fillElem = fillElem;
+	  this(0,x.length-1,0,x[0].length-1,fillElem);
 	 //Populates board, putting nulls where x has fillElem
-	  for (int i=0; i<=maxRow-minRow; i++){
-	  	ArrayList<T> cols = new ArrayList<T>();
-	  	for (int j=0; j<=maxCol-minCol; j++){
+	  for (int i=0; i<=maxRow; i++){
+	  	for (int j=0; j<=maxCol; j++){
 	  		if (!x[i][j].equals(fillElem))
-	  			cols.add(x[i][j]);
-	  		else
-	  			cols.add(null);
+	  			setCell(i,j,x[i][j]);
 	  	}
-	  	rows.add(cols);
 	  }
+	  rescanLongest();
   }
 
   // Access the extent of the board
@@ -128,117 +126,212 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   // internal board data structures so that the list can be changed
   // and not affect the board.  This implies a copy of any internal
   // board lists should be made and returned.
-  
-  
-  //This element is kept current by calling the 
-  //method after every set, undo, and redo.
+  //
+  // The longest sequence is tracked incrementally by set(), undoSet()
+  // and redoSet() so this method only copies it.
+  //
+  // Target Complexity: O(L)
+  //   L: length of the longest sequence
   public List< RowColElem<T> > getLongestSequence(){
-	  //Sets up temporary variables and loop indices for search
-	  boolean sequence = true;
-	  int i=0,j=0;
-	  
-	  //Main loop of method to search
-	  while (sequence){
-		  T temp = rows.get(i).get(j);
-		  
-		  //I wasn't able to get a working way to compare sequences
-		  //of equal length, though I would do it by searching through
-		  //the undo stack until I found elements from each array.
-		  //Whichever sequence's element was farther down would be 
-		  //considered the longest.
-		  
-		  //Sets up temp ArrayList to hold each sequence while searching
-		  //and reset values for i and j
-		  int jInitial=j,iInitial=i;
-		  ArrayList<RowColElem<T>> tempList1 = new ArrayList<RowColElem<T>>();
-		  
-		  //Loop to check horizontal length of sequence
-		  while((temp != null)&&(j<=maxCol-minCol)&&(temp.equals(rows.get(i).get(j)))){
-			  RowColElem<T> match = new RowColElem<T>(i+minRow,j+minCol,temp);
-			  tempList1.add(match);
-			  j++;
-		  }
-		  //Compares to current longest sequence
-		  if (tempList1.size()>longest.size()){
-			  longest = tempList1;
-		  }
-		  
-		  //Resets values
-		  j=jInitial;
-		  tempList1 = new ArrayList<RowColElem<T>>();
-		  
-		  //Loop to check vertical length of sequence
-		  while ((temp != null)&&(i<=maxRow-minRow)
-				  &&(temp.equals(rows.get(i).get(j)))){
-			  RowColElem<T> match = new RowColElem<T>(i+minRow,j+minCol,temp);
-			  tempList1.add(match);
-			  i++;
-		  }
-		  //Compares temp list to current longest
-		  if (tempList1.size() > longest.size()){
-			  longest = tempList1;
-		  }
-		  //Resets values
-		  i = iInitial;
-		  tempList1 = new ArrayList<RowColElem<T>>();
-		  
-		  //Loop to check diagonal-right length
-		  while ((temp != null)&&(i<=maxRow-minRow)&&(j<=maxCol-minCol)
-				  &&(temp.equals(rows.get(i).get(j)))){
-			  RowColElem<T> match = new RowColElem<T>(i+minRow,j+minCol,temp);
-			  tempList1.add(match);
-			  i++;
-			  j++;
-		  }
-		  //Compares to current longest
-		  if (tempList1.size() > longest.size()){
-			  longest = tempList1;
-		  }
-		  //Resets values
-		  i = iInitial;
-		  j = jInitial;
-		  tempList1 = new ArrayList<RowColElem<T>>();
-		  
-		  //Loop to check diagonal-left length
-		  while((temp != null)&&(i<=maxRow-minRow)&&(j>=0)
-				  &&(temp.equals(rows.get(i).get(j)))){
-			  RowColElem<T> match = new RowColElem<T>(i+minRow,j+minCol,temp);
-			  tempList1.add(match);
-			  i++;
-			  j--;
-		  }
-		  //Compares to current longest
-		  if (tempList1.size() > longest.size()){
-			  longest = tempList1;
+	  return new ArrayList<RowColElem<T>>(longest);
+  }
+
+  // Return the longest sequence as a SequenceView. The view is made
+  // the first time it is asked for after the longest sequence changes
+  // and handed out again until the next change.
+  //
+  // Target Complexity: O(1)
+  public SequenceView<T> getLongestView(){
+	  SequenceView<T> view = longestView;
+	  if (view == null || !view.isOf(longest))
+		  longestView = view = SequenceView.of(longest);
+	  return view;
+  }
+
+  // Return the explicitly set elements in rows r0..r1 and cols c0..c1
+  // in row/col order. Only the part of the rectangle inside the extent
+  // is looked at.
+  //
+  // Target Complexity: O(A)
+  //   A: area of the rectangle within the extent
+  public List<RowColElem<T>> elementsInRange(int r0, int r1, int c0, int c1){
+	  List<RowColElem<T>> found = new ArrayList<RowColElem<T>>();
+	  for (int i=Math.max(r0,minRow); i<=Math.min(r1,maxRow); i++){
+		  for (int j=Math.max(c0,minCol); j<=Math.min(c1,maxCol); j++){
+			  T x = cell(i,j);
+			  if (x != null)
+				  found.add(new RowColElem<T>(i,j,x));
 		  }
-		  //Resets values
-		  i = iInitial;
-		  j = jInitial;
-		  tempList1 = new ArrayList<RowColElem<T>>();
-		  
-		  //Prepares for next round of searches.  Moves horizontal index
-		  //and vertical one if needed
-		  j++;
-		  if (j > maxCol-minCol){
-			  j = 0;
-			  if (i <= maxRow-minRow)
-				  i++;
+	  }
+	  return found;
+  }
+
+  // Check the four lines running through row/col after x has been
+  // placed there. A run through the new cell which is strictly longer
+  // than the current longest sequence replaces it so ties keep the
+  // earliest sequence. The caller records the previous longest
+  // sequence in the history so that undoSet() can restore it without
+  // searching the board.
+  //
+  // Target Complexity: O(K)
+  //   K: length of the runs through row/col
+  private void trackLongest(int row, int col, T x){
+	  for (int d=0; d<DIRECTIONS.length; d++){
+		  int dRow = DIRECTIONS[d][0], dCol = DIRECTIONS[d][1];
+		  int back = countRun(row, col, -dRow, -dCol, x);
+		  int length = back + 1 + countRun(row, col, dRow, dCol, x);
+		  if (length > longest.size()){
+			  longest = buildSequence(row-back*dRow, col-back*dCol, dRow, dCol, length, x);
 		  }
-		  //Exits loop
-		  if (i > maxRow-minRow){
-			  	sequence = false;
-		  		break;
+	  }
+  }
+
+  // Count the cells past row/col in direction dRow/dCol which hold an
+  // element equal to x. Counting stops at the edge of the board.
+  private int countRun(int row, int col, int dRow, int dCol, T x){
+	  int count = 0;
+	  int i = row+dRow, j = col+dCol;
+	  while ((i>=minRow)&&(i<=maxRow)&&(j>=minCol)&&(j<=maxCol)
+			  &&(x.equals(cell(i,j)))){
+		  count++;
+		  i += dRow;
+		  j += dCol;
+	  }
+	  return count;
+  }
+
+  // Whether row/col is inside the extent and holds an element equal to
+  // x, that is whether a run of x reaching row/col carries on there
+  private boolean continuesRun(int row, int col, T x){
+	  return (row>=minRow)&&(row<=maxRow)&&(col>=minCol)&&(col<=maxCol)
+		  &&(x.equals(cell(row,col)));
+  }
+
+  // Create the list of triples for a sequence of length elements
+  // starting at row/col and moving in direction dRow/dCol
+  private List<RowColElem<T>> buildSequence(int row, int col, int dRow, int dCol,
+		  int length, T x){
+	  List<RowColElem<T>> seq = new ArrayList<RowColElem<T>>(length);
+	  for (int k=0; k<length; k++){
+		  seq.add(new RowColElem<T>(row+k*dRow, col+k*dCol, x));
+	  }
+	  return seq;
+  }
+
+  // Search the whole board again for its longest sequence, replacing
+  // the one tracked by set(), undoSet() and redoSet().  Of runs of the
+  // same length the one starting first in row-major order wins, which
+  // may differ from the tracked sequence when there is a tie.  Large
+  // boards are searched in parallel, see rescanLongest().  The undo
+  // history is not changed.
+  //
+  // Target Complexity: O(R*C/P)
+  //   P: number of processors
+  public void rescan(){
+	  rescanLongest();
+  }
+
+  // Search the whole board for its longest sequence. Used when a board
+  // is filled without going through set().
+  //
+  // The rows are split into bands of about SCAN_BAND cells which are
+  // searched by a ForkJoinPool.  A band counts the runs, in all four
+  // directions, whose first cell lies in it, following them past its
+  // last row into the rows below; a run crossing a seam is stitched
+  // together by the band holding its first cell and skipped by the
+  // band below, whose cells all have a predecessor.  A run is only
+  // followed from its first cell, found by checking the one cell before
+  // it, so each cell is counted once per direction.
+  //
+  // Target Complexity: O(R*C)
+  //   R: number of rows
+  //   C: number of columns
+  private void rescanLongest(){
+	  ScanResult best;
+	  long cells = (long)(maxRow-minRow+1)*(maxCol-minCol+1);
+	  if (cells <= SCAN_BAND)
+		  best = scanRows(minRow, maxRow);
+	  else
+		  best = ForkJoinPool.commonPool().invoke(new ScanTask(minRow, maxRow));
+	  longest = (best.length == 0) ? new ArrayList<RowColElem<T>>()
+		  : buildSequence(best.row, best.col, DIRECTIONS[best.dir][0], DIRECTIONS[best.dir][1],
+				  best.length, cell(best.row, best.col));
+  }
+
+  // Cells searched by one task of rescanLongest()
+  private static final int SCAN_BAND = 1 << 16;
+
+  // Longest run found by a search: its length, first cell and index
+  // into DIRECTIONS
+  private static class ScanResult{
+	  int length = 0, row, col, dir;
+
+	  // Whether run length/row/col/dir beats this one: longer, or as
+	  // long and first in row-major order then direction order, the
+	  // order a single pass over the board meets them.
+	  boolean beatenBy(int length, int row, int col, int dir){
+		  if (length != this.length)
+			  return length > this.length;
+		  if (row != this.row)
+			  return row < this.row;
+		  if (col != this.col)
+			  return col < this.col;
+		  return dir < this.dir;
+	  }
+
+	  ScanResult better(ScanResult other){
+		  return beatenBy(other.length, other.row, other.col, other.dir) ? other : this;
+	  }
+  }
+
+  // Search rows r0..r1 as one band, or split them in two halves
+  @SuppressWarnings("serial")
+  private class ScanTask extends RecursiveTask<ScanResult>{
+	  private final int r0, r1;
+
+	  ScanTask(int r0, int r1){
+		  this.r0 = r0;
+		  this.r1 = r1;
+	  }
+
+	  protected ScanResult compute(){
+		  if ((long)(r1-r0+1)*(maxCol-minCol+1) <= SCAN_BAND || r0 == r1)
+			  return scanRows(r0, r1);
+		  int mid = r0 + (r1-r0)/2;
+		  ScanTask lower = new ScanTask(mid+1, r1);
+		  lower.fork();
+		  ScanResult upper = new ScanTask(r0, mid).compute();
+		  return upper.better(lower.join());
+	  }
+  }
+
+  // Longest of the runs whose first cell is in rows r0..r1. Runs are
+  // followed to their end even beyond r1. Only reads the board so bands
+  // may be searched at the same time.
+  private ScanResult scanRows(int r0, int r1){
+	  ScanResult best = new ScanResult();
+	  for (int i=r0; i<=r1; i++){
+		  for (int j=minCol; j<=maxCol; j++){
+			  T x = cell(i,j);
+			  if (x == null)
+				  continue;
+			  for (int d=0; d<DIRECTIONS.length; d++){
+				  int dRow = DIRECTIONS[d][0], dCol = DIRECTIONS[d][1];
+				  //Only start counting at the beginning of a run
+				  if (continuesRun(i-dRow, j-dCol, x))
+					  continue;
+				  int length = 1 + countRun(i, j, dRow, dCol, x);
+				  if (length > best.length){
+					  best.length = length;
+					  best.row = i;
+					  best.col = j;
+					  best.dir = d;
+				  }
+			  }
 		  }
 	  }
-	  return longest;
+	  return best;
   }
-  
-  
-  
-  
-  
-  
-  
 
   // Retrieve an element at virtual row/col specified. Performs bounds
   // checking and necessary internal translation to retrieve from
@@ -257,10 +350,10 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
 	  //checks if row/col are within bounds
 	  if ((row<=maxRow)&&(row>=minRow)){
 		  if ((col<=maxCol)&&(col>=minCol))
-			  if (rows.get(row-minRow).get(col-minCol)==null)
+			  if (cell(row,col)==null)
 				  ret = fillElem;
 			  else
-				  ret= rows.get(row-minRow).get(col-minCol);
+				  ret= cell(row,col);
 		  //Otherwise returns fill element
 		  else
 			  ret = fillElem;
@@ -272,34 +365,51 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
 
   // Append a row to the bottom of the board increasing the maximum
   // row by one
-   
-  
-  //This method adheres to the target complexity because it only has to
-  //loop through all the columns once, making null values, then 
-  //it adds that to rows, which takes constant time.
+  //
+  // Target Complexity: O(C) (amortized)
   public void addRowBottom(){
-	  maxRow +=1;
-	  ArrayList<T> tempCol = new ArrayList<T>();
-	  for (int i=0; i< maxCol-minCol+1; i++){
-		  tempCol.add(null);
-	  }
-	  rows.add(tempCol);
+	  expandToInclude(maxRow+1, minCol);
   }
 
   // Append a column to the right edge of the board increasing the
   // maximum column by one
   //
- 
-  
-  //This method adheres to the target complexity because 
-  //it goes through every row once, and adds null to the 
-  //end of the row.
+  // Target Complexity: O(R) (amortized)
   public void addColRight(){
-	  maxCol +=1;
-	  int i;
-	  for (i=0; i<rows.size(); i++){
-		  rows.get(i).add(null);
-	  }	  
+	  expandToInclude(minRow, maxCol+1);
+  }
+
+  // Element stored at virtual row/col which must be within the
+  // storage; null marks a cell that has not been set.
+  private T cell(int row, int col){
+	  return rows.get(row+rowOrigin).get(col+colOrigin);
+  }
+
+  // Key of row/col for hash tables, mixed so that it hashes well
+  private static long key(int row, int col){
+	  return Zobrist.position(row, col);
+  }
+
+  // Store x at virtual row/col which must be within the storage,
+  // replacing the key of the old element in the hash with that of x
+  // and updating the threat index.
+  private void setCell(int row, int col, T x){
+	  T old = rows.get(row+rowOrigin).set(col+colOrigin, x);
+	  if (old != null)
+		  hash ^= Zobrist.key(row, col, old);
+	  if (x != null)
+		  hash ^= Zobrist.key(row, col, x);
+	  if (threats != null)
+		  threats.changed(row, col, old, x);
+  }
+
+  // Create a row of storage holding n empty cells
+  private ArrayList<T> emptyRow(int n){
+	  ArrayList<T> row = new ArrayList<T>(n);
+	  for (int j=0; j<n; j++){
+		  row.add(null);
+	  }
+	  return row;
   }
 
   // Set give element at row/col position to be x. Expand the board if
@@ -346,18 +456,16 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
 		  expandToInclude(row,col);
 	  }
 	  //Throws exception if space already set
-	  if (fill&&(rows.get(row-minRow).get(col-minCol)!= null)){
+	  if (fill&&(cell(row,col)!= null)){
 		  throw new RuntimeException(String.format("Element %d %d already set to ",
-				  row, col)+(rows.get(row-minRow).get(col-minCol).toString()));
+				  row, col)+(cell(row,col).toString()));
 	  }
 	  //Doing the actual setting, checking for new longest sequence,
 	  //then taking care of undo/redo stacks
 	  if (fill){
-		  rows.get(row-minRow).set(col-minCol, x);
-		  longest = getLongestSequence();
-		  RowColElem<T> move = new RowColElem<T>(row,col,x); 
-		  undoStack.push(move);
-		  redoStack = new Stack<RowColElem<T>>();
+		  setCell(row, col, x);
+		  history.push(row, col, x, longest);
+		  trackLongest(row, col, x);
 	  }
 	  
 	  
@@ -376,18 +484,78 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   
   
   
-  // Return how many rows the board has in memory which should
-  // correspond to the difference between maxRow and minRow. This
-  // method is not part of the ExpandableBoard interface.
+  // Set every element of cells as a single step: one call to
+  // undoSet() removes them all and one call to redoSet() puts them
+  // back.  Elements equal to the fill element are skipped.  Every
+  // element is checked before the board is changed, so if one of them
+  // is null or its position is already set, on the board or earlier
+  // in cells, the same RuntimeException as set() is raised and the
+  // board is left as it was.  The board is expanded once to the
+  // bounding box of cells and the longest sequence before the batch
+  // is saved once for undoSet().
+  //
+  // Target Complexity: O(N*K + A)
+  //   N: number of elements in cells
+  //   K: length of the runs through each element
+  //   A: number of cells added to the extent
+  public void setAll(Collection<RowColElem<T>> cells){
+	  //check everything and find the bounding box before changing anything
+	  HashMap<Long,T> batch = new HashMap<Long,T>();
+	  int r0 = minRow, r1 = maxRow, c0 = minCol, c1 = maxCol;
+	  for (RowColElem<T> e : cells){
+		  int row = e.getRow(), col = e.getCol();
+		  T x = e.getElem();
+		  if (x == null)
+			  throw new RuntimeException("Cannot set elements to null");
+		  if (x.equals(fillElem))
+			  continue;
+		  T prev = batch.get(key(row,col));
+		  if ((prev == null)&&(row >= minRow)&&(row <= maxRow)&&(col >= minCol)&&(col <= maxCol))
+			  prev = cell(row,col);
+		  if (prev != null){
+			  throw new RuntimeException(String.format("Element %d %d already set to ",
+					  row, col)+prev.toString());
+		  }
+		  batch.put(key(row,col), x);
+		  r0 = Math.min(r0,row);
+		  r1 = Math.max(r1,row);
+		  c0 = Math.min(c0,col);
+		  c1 = Math.max(c1,col);
+	  }
+	  if (batch.isEmpty())
+		  return;
+	  expandToBox(r0, r1, c0, c1);
+	  boolean first = true;
+	  for (RowColElem<T> e : cells){
+		  T x = e.getElem();
+		  if (x.equals(fillElem))
+			  continue;
+		  setCell(e.getRow(), e.getCol(), x);
+		  if (first)
+			  history.push(e.getRow(), e.getCol(), x, longest);
+		  else
+			  history.pushJoined(e.getRow(), e.getCol(), x);
+		  first = false;
+		  trackLongest(e.getRow(), e.getCol(), x);
+	  }
+  }
+
+  // Return how many rows are in the extent of the board, the
+  // difference between maxRow and minRow plus one. Storage keeps spare
+  // rows around the extent; getRowCapacity() gives how many rows are
+  // actually in memory. This method is not part of the ExpandableBoard
+  // interface.
   //
   // No target complexity.
   public int getPhysicalRows(){
 	  return maxRow - minRow+1;
   }
 
-  // Return how many columns the board has in memory which should
-  // correspond to the difference between maxCol and minCol. This
-  // method is not part of the ExpandableBoard interface.
+  // Return how many columns are in the extent of the board, the
+  // difference between maxCol and minCol plus one. Storage keeps spare
+  // columns around the extent; getColCapacity() gives how many columns
+  // are actually in memory. This method is not part of the
+  // ExpandableBoard interface.
   // 
   // Target complexity: O(1)
   public int getPhysicalCols(){
@@ -408,106 +576,47 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   // This method should change min/max row/col the expansion increases
   // the size of the board.
   // 
-  // The method should return the number of new cells of memory N
-  // which are created by it.  
+  // The method should return the number of new cells N which are
+  // added to the extent of the board by it.
   // 
+  // Storage keeps spare cells on all four sides of the extent, so an
+  // expansion that fits only moves min/max row/col. When a side runs
+  // out, that dimension is reallocated at twice the new extent with
+  // the extent centered, which makes left/up growth as cheap as
+  // right/down growth.
+  //
   // Target Complexity: 
   //   Expansion right/down: O(N)       (amortized)
-  //   Expansion left/up:    O(N + R*C) (amortized)
+  //   Expansion left/up:    O(N)       (amortized)
   //     N: new elements created which is the return value of the function
-  //     R: number of rows
-  //     C: number of columns
   public int expandToInclude(int row, int col){
-	  //Variables to record how many cells created, along with
-	  //how many columns/rows need to be created
-	  int cellsCreated = 0;
-	  int downDiff = row-maxRow, rightDiff = col-maxCol;
-	  int upDiff = minRow-row, leftDiff = minCol-col;
-	  
-	  //Adds to right and shifts all cels right
-	  //At the end, sets first position to null
-	  if (leftDiff > 0){
-		  int i=0,j=0;
-		  //adding new cell
-		  for (i=0; i<rows.size(); i++){
-			  for (j=0;j< leftDiff; j++){
-				  rows.get(i).add(null);
-				  cellsCreated ++;
-			  }
-		  }
+	  return expandToBox(Math.min(minRow,row), Math.max(maxRow,row),
+			  Math.min(minCol,col), Math.max(maxCol,col));
+  }
 
-		  //Copied from fillAtBeginning file:
-		  //shifts cells one position to right
-		  for (int k=0;k<rows.size(); k++){
-			  for(i=0;i<leftDiff;i++){
-				  for(j=rows.get(k).size()-1; j>0; j--){
-					  rows.get(k).set(j, rows.get(k).get(j-1));
-				  }
-				  rows.get(k).set(0,null);
-			  }
-		  }
-		  minCol = col;
-	  }
+  // Expand the extent to newMinRow..newMaxRow by newMinCol..newMaxCol,
+  // which must include the current extent, and return the number of
+  // cells added.
+  private int expandToBox(int newMinRow, int newMaxRow, int newMinCol, int newMaxCol){
+	  //Counted in long as a large extent overflows int; clamped on return
+	  long created = (long)(newMaxRow-newMinRow+1)*(newMaxCol-newMinCol+1)
+			  - (long)(maxRow-minRow+1)*(maxCol-minCol+1);
+	  int cellsCreated = (int) Math.min(Integer.MAX_VALUE, created);
 	  
-	  //Adds to right if necessary
-	  if (rightDiff > 0){
-		  int i=0,j=0;
-		  //Adds null to every row
-		  for (i=0; i<rows.size(); i++){
-			  for (j=0; j<rightDiff; j++){
-				  rows.get(i).add(null);
-				  cellsCreated ++;
-			  }
-			  
-		  }
-		  maxCol = col;
-	  }
+	  //Regrows every row when the new columns do not fit on the left
+	  //or right
+	  if ((newMinCol+colOrigin < 0)||(newMaxCol+colOrigin >= getColCapacity()))
+		  resizeCols(2*(newMaxCol-newMinCol+1), newMinCol, newMaxCol);
 	  
-	  //Adds to bottom if necessary
-	  if (downDiff > 0){
-		  int i=0,j=0;
-		  //Creates row of nulls, then adds to end of board
-		  while (j<downDiff){
-			  ArrayList<T> tempCol = new ArrayList<T>();
-			  for (i=0; i< maxCol-minCol+1; i++){
-				  tempCol.add(null);
-			  }
-		  
-			  rows.add(tempCol);
-			  cellsCreated += maxCol-minCol+1;
-			  j++;
-		  }		  
-		  maxRow = row;
-	  }
+	  //Rebuilds the list of rows when the new rows do not fit above
+	  //or below
+	  if ((newMinRow+rowOrigin < 0)||(newMaxRow+rowOrigin >= getRowCapacity()))
+		  resizeRows(2*(newMaxRow-newMinRow+1), newMinRow, newMaxRow);
 	  
-	  //Expands down, then shifts and adds blank row to top
-	  if (upDiff > 0){
-		  //Creates row of nulls
-		  int i=0,j=0;
-		  while (j<upDiff){
-			  ArrayList<T> tempCol = new ArrayList<T>();
-			  for (i=0; i< maxCol-minCol+1; i++){
-				  tempCol.add(null);
-			  }
-		  
-			  rows.add(tempCol);
-			  cellsCreated += maxCol-minCol+1;
-			  
-			  //shifts all cells down
-			  for(i=rows.size()-1;i>0;i--){
-				  rows.set(i, rows.get(i-1));
-			  } 
-			  //adds blank row to top
-			  tempCol = new ArrayList<T>();
-			  for (i=0; i< maxCol-minCol+1; i++){
-				  tempCol.add(null);
-			  }
-			  rows.set(0, tempCol);
-			  j++;
-		  }
-		  minRow = row;
-	  }
-
+	  minRow = newMinRow;
+	  maxRow = newMaxRow;
+	  minCol = newMinCol;
+	  maxCol = newMaxCol;
 	  return cellsCreated;
   }
 
@@ -517,6 +626,113 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   
   
   
+  // Regrow every row to hold capacity cells with cols lo..hi centered
+  // in it. Only the cells inside the extent are copied so lo..hi must
+  // include every set element.
+  private void resizeCols(int capacity, int lo, int hi){
+	  int newColOrigin = (capacity-(hi-lo+1))/2 - lo;
+	  for (int i=0; i<rows.size(); i++){
+		  ArrayList<T> oldRow = rows.get(i);
+		  ArrayList<T> newRow = emptyRow(capacity);
+		  for (int j=Math.max(minCol,lo); j<=Math.min(maxCol,hi); j++){
+			  newRow.set(j+newColOrigin, oldRow.get(j+colOrigin));
+		  }
+		  rows.set(i, newRow);
+	  }
+	  colOrigin = newColOrigin;
+  }
+
+  // Rebuild the list of rows to hold capacity rows with rows lo..hi
+  // centered in it. Existing rows are moved over, not copied.
+  private void resizeRows(int capacity, int lo, int hi){
+	  int newRowOrigin = (capacity-(hi-lo+1))/2 - lo;
+	  ArrayList<ArrayList<T>> newRows = new ArrayList<ArrayList<T>>(capacity);
+	  for (int i=0; i<capacity; i++){
+		  int oldIndex = i-newRowOrigin+rowOrigin;
+		  if ((oldIndex>=0)&&(oldIndex<rows.size()))
+			  newRows.add(rows.get(oldIndex));
+		  else
+			  newRows.add(emptyRow(getColCapacity()));
+	  }
+	  rows = newRows;
+	  rowOrigin = newRowOrigin;
+  }
+
+  // Return how many rows/cols the board's storage can hold before it
+  // has to be reallocated. This is at least the extent and may be more
+  // as spare capacity is kept on all sides. These methods are not part
+  // of the ExpandableBoard interface.
+  //
+  // Target complexity: O(1)
+  public int getRowCapacity(){
+	  return rows.size();
+  }
+
+  public int getColCapacity(){
+	  return rows.get(0).size();
+  }
+
+  // Make sure the storage can hold at least rowCount rows and colCount
+  // cols without reallocating, for example to preallocate a board for
+  // a game of known size. Spare capacity is split evenly around the
+  // extent. The extent does not change.
+  //
+  // Target Complexity: O(rowCount*colCount)
+  public void reserve(int rowCount, int colCount){
+	  if (colCount > getColCapacity())
+		  resizeCols(colCount, minCol, maxCol);
+	  if (rowCount > getRowCapacity())
+		  resizeRows(rowCount, minRow, maxRow);
+  }
+
+  // Release all spare capacity so the storage holds exactly the
+  // extent. Call shrinkExtent() first to also release rows and cols
+  // emptied by undoSet().
+  //
+  // Target Complexity: O(R*C)
+  //   R: number of rows
+  //   C: number of columns
+  public void trimToSize(){
+	  if (getColCapacity() != maxCol-minCol+1)
+		  resizeCols(maxCol-minCol+1, minCol, maxCol);
+	  if (getRowCapacity() != maxRow-minRow+1)
+		  resizeRows(maxRow-minRow+1, minRow, maxRow);
+  }
+
+  // Shrink the extent to the smallest rectangle holding every set
+  // element, for example after undoSet() has emptied its outer rows
+  // and cols, and return the number of cells removed from it. A board
+  // without set elements keeps its extent. The storage is not
+  // released; see trimToSize(). Elements outside the new extent that
+  // are brought back by redoSet() expand the board again.
+  //
+  // Target Complexity: O(R*C)
+  //   R: number of rows
+  //   C: number of columns
+  public int shrinkExtent(){
+	  int r0 = Integer.MAX_VALUE, r1 = Integer.MIN_VALUE;
+	  int c0 = Integer.MAX_VALUE, c1 = Integer.MIN_VALUE;
+	  for (int i=minRow; i<=maxRow; i++){
+		  for (int j=minCol; j<=maxCol; j++){
+			  if (cell(i,j) != null){
+				  r0 = Math.min(r0,i);
+				  r1 = Math.max(r1,i);
+				  c0 = Math.min(c0,j);
+				  c1 = Math.max(c1,j);
+			  }
+		  }
+	  }
+	  if (r0 > r1)
+		  return 0;
+	  long removed = (long)(maxRow-minRow+1)*(maxCol-minCol+1) - (long)(r1-r0+1)*(c1-c0+1);
+	  int cellsRemoved = (int) Math.min(Integer.MAX_VALUE, removed);
+	  minRow = r0;
+	  maxRow = r1;
+	  minCol = c0;
+	  maxCol = c1;
+	  return cellsRemoved;
+  }
+
   // Undo an explicit set(row,col,x) operation by changing an element
   // to its previous state.  Repeated calls to undoSet() can be made
   // to restore the board to an earlier state.  Each call to undoSet()
@@ -529,21 +745,22 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   //
   // Target Complexity: O(1) (worst case)
   public void undoSet(){
-	  //check if empty
-	  if (undoStack.size()==0){
-		  throw new RuntimeException("Undo history is empty");
-	  }
-	  //take out of undoStack
-	  RowColElem<T> undoMove = undoStack.pop(); 
+	  //step back in the history; throws if it is empty
+	  int slot = history.undo();
 	  //change board
-	  int row = undoMove.getRow();
-	  int col = undoMove.getCol();
-	  T x = undoMove.getElem();
-	  rows.get(row-minRow).set(col-minCol,null);
-	  longest = getLongestSequence();
-	  //add to redoStack
-	  RowColElem<T> redoMove = new RowColElem<T>(row,col,x);
-	  redoStack.push(redoMove);
+	  setCell(history.row(slot), history.col(slot), null);
+	  //the rest of a setAll() batch
+	  while (history.isJoined(slot)){
+		  slot = history.undo();
+		  setCell(history.row(slot), history.col(slot), null);
+	  }
+	  longest = previousLongest(slot);
+  }
+
+  // Longest sequence saved with the move in slot of the history
+  @SuppressWarnings("unchecked")
+  private List<RowColElem<T>> previousLongest(int slot){
+	  return (List<RowColElem<T>>) history.note(slot);
   }
   
   
@@ -562,23 +779,61 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   // or undoSet() has not been called, this method generates a
   // RuntimeException with the message "Redo history is empty".
   //
-  // Target Complexity: O(1)
+  // Target Complexity: O(K)
+  //   K: length of the runs through the redone element
   public void redoSet(){
-	  //Check if empty
-	  if (redoStack.empty()){
-		  throw new RuntimeException("Redo history is empty");
-	  }
-	  //Get from redoStack
-	  RowColElem<T> redoMove = redoStack.pop();
-	  int row = redoMove.getRow();
-	  int col = redoMove.getCol();
-	  T x = redoMove.getElem();
+	  //step forward in the history; throws if nothing was undone
+	  int slot = history.redo();
+	  redoMove(slot);
+	  //the rest of a setAll() batch
+	  while (history.nextIsJoined()){
+		  redoMove(history.redo());
+	  }
+  }
+
+  private void redoMove(int slot){
+	  int row = history.row(slot);
+	  int col = history.col(slot);
+	  T x = history.elem(slot);
+	  //the extent may have been shrunk since the set was undone
+	  expandToInclude(row, col);
 	  //change board
-	  rows.get(row-minRow).set(col-minCol, x);
-	  longest = getLongestSequence();
-	  //add to undoStack
-	  RowColElem<T> undoMove = new RowColElem<T>(row, col, x);
-	  undoStack.push(undoMove);
+	  setCell(row, col, x);
+	  trackLongest(row, col, x);
+  }
+
+  // Return a 64-bit Zobrist hash of the elements set on the board.
+  // Boards with the same elements at the same positions have the same
+  // hash regardless of the order of the sets, their extent or their
+  // fill element, which makes it suitable as a key for transposition
+  // tables.  The hash is kept up to date by set(), undoSet() and
+  // redoSet().
+  //
+  // Target Complexity: O(1)
+  public long positionHash(){
+	  return hash;
+  }
+
+  // Start keeping a ThreatIndex of the board for a game won with
+  // winLength in a row and return it. The index is kept up to date by
+  // set(), undoSet() and redoSet() until trackThreats() is called
+  // again.
+  //
+  // Target Complexity: O(R*C + E * winLength^2)
+  //   R: number of rows
+  //   C: number of columns
+  //   E: number of elements set
+  public ThreatIndex<T> trackThreats(int winLength){
+	  threats = new ThreatIndex<T>(this, winLength);
+	  return threats;
+  }
+
+  // Limit the number of sets (or setAll() batches) kept for undoSet()
+  // to maxMoves, dropping the oldest ones once the limit is reached. A
+  // limit of 0 keeps every set. This method is not part of the ExpandableBoard
+  // interface.
+  public void setHistoryLimit(int maxMoves){
+	  history.setLimit(maxMoves);
   }
 
   
@@ -587,6 +842,127 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   
   
   
+  // Write a binary snapshot of the board to out: its extent, fill
+  // element, cells and undo/redo history in the format described in
+  // BoardSnapshot.  Each row is written as runs of equal cells, a
+  // varint length and a varint palette id plus one with 0 for empty
+  // cells.  Elements are written with toString() so they must be
+  // readable by the parse function given to loadFrom().
+  //
+  // Target Complexity: O(R*C + H)
+  //   R: number of rows
+  //   C: number of columns
+  //   H: number of moves in the history
+  public void saveTo(OutputStream stream) throws IOException{
+	  DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+	  BoardSnapshot<T> snapshot = new BoardSnapshot<T>(fillElem);
+	  for (int i=minRow; i<=maxRow; i++){
+		  for (int j=minCol; j<=maxCol; j++){
+			  if (cell(i,j) != null)
+				  snapshot.idOf(cell(i,j));
+		  }
+	  }
+	  snapshot.addHistory(history, longest);
+	  snapshot.writeHeader(out, BoardSnapshot.DENSE, minRow, maxRow, minCol, maxCol);
+	  for (int i=minRow; i<=maxRow; i++){
+		  int j = minCol;
+		  while (j <= maxCol){
+			  T x = cell(i,j);
+			  int end = j+1;
+			  while ((end <= maxCol)&&((x == null) ? cell(i,end) == null : x.equals(cell(i,end))))
+				  end++;
+			  BoardSnapshot.writeVarint(out, end-j);
+			  BoardSnapshot.writeVarint(out, (x == null) ? 0 : snapshot.idOf(x)+1);
+			  j = end;
+		  }
+	  }
+	  snapshot.writeHistory(out, history, longest);
+	  out.flush();
+  }
+
+  // Create a board from a snapshot written by saveTo(). The file is
+  // memory-mapped. Each element is made from the string written for it
+  // by parse; for a board of Strings pass s -> s.
+  //
+  // Target Complexity: O(R*C + H*K)
+  //   R: number of rows
+  //   C: number of columns
+  //   H: number of moves in the history
+  //   K: length of the runs through each move
+  public static <T> DenseBoard<T> loadFrom(Path path, Function<String,T> parse)
+		  throws IOException{
+	  return read(BoardSnapshot.map(path), parse);
+  }
+
+  // Same as above but reads the snapshot from a stream
+  public static <T> DenseBoard<T> loadFrom(InputStream in, Function<String,T> parse)
+		  throws IOException{
+	  return read(BoardSnapshot.readAll(in), parse);
+  }
+
+  // The runs are stored straight into the rows. The moves of the
+  // history which were applied are then taken off again and the history
+  // is rebuilt by replaying every move and undoing those which had been
+  // undone, which also brings back the longest sequence before each.
+  private static <T> DenseBoard<T> read(ByteBuffer in, Function<String,T> parse){
+	  int[] extent = BoardSnapshot.readHeader(in, BoardSnapshot.DENSE);
+	  List<T> palette = BoardSnapshot.readPalette(in, parse);
+	  DenseBoard<T> b = new DenseBoard<T>(extent[0], extent[1], extent[2], extent[3],
+			  palette.get(0));
+	  for (int i=b.minRow; i<=b.maxRow; i++){
+		  int j = b.minCol;
+		  while (j <= b.maxCol){
+			  int length = BoardSnapshot.readCount(in);
+			  int id = BoardSnapshot.readCount(in);
+			  if ((length == 0)||(length > b.maxCol-j+1)||(id > palette.size()))
+				  throw new RuntimeException("Bad board snapshot");
+			  for (int k=0; (id > 0)&&(k<length); k++){
+				  b.setCell(i, j+k, palette.get(id-1));
+			  }
+			  j += length;
+		  }
+	  }
+	  BoardSnapshot.Moves<T> moves = BoardSnapshot.readHistory(in, palette);
+	  for (int m=0; m<moves.applied; m++){
+		  if (!moves.elems.get(m).equals(b.get(moves.rows[m], moves.cols[m])))
+			  throw new RuntimeException("Bad board snapshot");
+		  b.setCell(moves.rows[m], moves.cols[m], null);
+	  }
+	  for (RowColElem<T> e : moves.longest){
+		  if (!e.getElem().equals(b.get(e.getRow(), e.getCol())))
+			  throw new RuntimeException("Bad board snapshot");
+	  }
+	  b.longest = moves.longest;
+	  b.replay(moves);
+	  return b;
+  }
+
+  // Rebuild the history from moves, leaving the board as it was saved
+  private void replay(BoardSnapshot.Moves<T> moves){
+	  int r0 = minRow, r1 = maxRow, c0 = minCol, c1 = maxCol;
+	  history.setLimit(moves.limit);
+	  for (int m=0; m<moves.rows.length; m++){
+		  int row = moves.rows[m], col = moves.cols[m];
+		  T x = moves.elems.get(m);
+		  //moves that had been undone may lie outside a shrunk extent
+		  expandToInclude(row, col);
+		  if (cell(row,col) != null)
+			  throw new RuntimeException("Bad board snapshot");
+		  setCell(row, col, x);
+		  if (moves.joined[m])
+			  history.pushJoined(row, col, x);
+		  else
+			  history.push(row, col, x, longest);
+		  trackLongest(row, col, x);
+	  }
+	  while (history.size() > moves.applied)
+		  undoSet();
+	  minRow = r0;
+	  maxRow = r1;
+	  minCol = c0;
+	  maxCol = c1;
+  }
+
   // toString() - create a pretty representation of board.
   //
   // Examples:
@@ -618,57 +994,72 @@ public class DenseBoard<T> implements ExpandableBoard<T>{
   //   R: number of rows
   //   C: number of columns
   // 
-  // Note: to meet adhere to this runtime complexity, normal string
-  // concatenation cannot be used; instead a StringBuilder should be
-  // employed.
+  // The board is rendered into a StringBuilder by render().
   public String toString(){
-	  String board = "";
 	  StringBuilder builder = new StringBuilder();
-	  
-	  //initial top left bar
-	  builder.append("    |");
-	  
-	  //puts column numbers
-	  for (int j=0; j<maxCol-minCol+1;j++){
-		  builder.append(String.format("%1$3d|", minCol+j));
-	  }
-	  //puts in divider line
-	  builder.append("\n    +");
-	  for (int k=0; k<maxCol-minCol+1;k++){
-		  builder.append("---+");
-	  }
-	  //loops through entire board to add to stringbuilder
-	  for (int i=0; i<=maxRow-minRow;i++){
-		  //Adds new line and row number
-		  builder.append("\n");
-		  builder.append(String.format("%1$3d |",minRow+i));
-		  
-		  //Loop to put in board elements
-		  for (int j=0; j<=maxCol-minCol;j++){
-			  T elem = rows.get(i).get(j);
-			  if (elem != null)
-				  builder.append(String.format("%1$3s|", elem));
-			  else
-				  builder.append(String.format("%1$3s|", fillElem));
-		  }
-		  
-		  //puts in divider line
-		  builder.append("\n    +");
-		  for (int k=0; k<maxCol-minCol+1;k++){
-			  builder.append("---+");
+	  try{
+		  render(builder, minRow, maxRow, minCol, maxCol);
+	  }
+	  catch (IOException e){
+		  //a StringBuilder never throws
+		  throw new RuntimeException(e);
+	  }
+	  return builder.toString();
+  }
+
+  // Write a pretty representation of the part of the board in rows
+  // r0..r1 and cols c0..c1 to out, in the same format as toString().
+  // The viewport may reach beyond the extent of the board; cells there
+  // show the fill element.  Nothing is built up in memory so a large
+  // board can be written straight to a Writer or PrintStream.
+  //
+  // Target Complexity: O((r1-r0+1)*(c1-c0+1))
+  public void render(Appendable out, int r0, int r1, int c0, int c1) throws IOException{
+	  appendHeader(out, c0, c1);
+	  for (int i=r0; i<=r1; i++){
+		  appendRowLabel(out, i);
+		  for (int j=c0; j<=c1; j++){
+			  appendCell(out, get(i,j).toString());
 		  }
+		  appendDivider(out, c0, c1);
 	  }
-	  board = builder.toString()+"\n";
-	  
-	  //put row numbers vertically					-done
-	  
-	  //then all in one loop:
-	  //put column numbers on top row				-done
-	  //format each element as it is 
-	  //being put into the array					-done
-	  //put in between lines in as each 
-	  //element is added							-done
-	  return board;
+	  out.append('\n');
+  }
+
+  // Append s to out right aligned in a field of 3 characters followed
+  // by a bar, like String.format("%1$3s|",s) without the allocation
+  private static void appendCell(Appendable out, String s) throws IOException{
+	  for (int k=s.length(); k<3; k++){
+		  out.append(' ');
+	  }
+	  out.append(s).append('|');
+  }
+
+  // Column numbers and the divider line under them
+  private static void appendHeader(Appendable out, int c0, int c1) throws IOException{
+	  //initial top left bar and column numbers
+	  out.append("    |");
+	  for (int j=c0; j<=c1; j++){
+		  appendCell(out, Integer.toString(j));
+	  }
+	  appendDivider(out, c0, c1);
+  }
+
+  private static void appendDivider(Appendable out, int c0, int c1) throws IOException{
+	  out.append("\n    +");
+	  for (int j=c0; j<=c1; j++){
+		  out.append("---+");
+	  }
+  }
+
+  // Newline and the label at the start of row i
+  private static void appendRowLabel(Appendable out, int i) throws IOException{
+	  out.append('\n');
+	  String label = Integer.toString(i);
+	  for (int k=label.length(); k<3; k++){
+		  out.append(' ');
+	  }
+	  out.append(label).append(" |");
   }
   	
 }
\ No newline at end of file
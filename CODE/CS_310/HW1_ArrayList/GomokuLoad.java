@@ -0,0 +1,144 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+// Load generator for GomokuServer.  Plays games against a server on
+// localhost from many clients at once and reports games per second
+// and the latency of moves.
+//
+//   java GomokuLoad <port> <games> <clients> [seed]
+//
+// Each client connects, starts a game of 5 in a row between X and O
+// on a 15x15 area and sets random empty cells until someone wins or
+// the area is full, then starts its next game on a new connection
+// until <games> games have been played in all.  The latency of a move
+// is the time from sending a set to reading its reply.
+public class GomokuLoad{
+
+	//Games are played on rows and cols 1..SIZE
+	private static final int SIZE = 15;
+
+	// Latencies recorded by one client, in nanoseconds
+	private static class Latencies{
+		long[] nanos = new long[1024];
+		int count = 0;
+
+		void add(long t){
+			if (count == nanos.length)
+				nanos = Arrays.copyOf(nanos, 2*count);
+			nanos[count++] = t;
+		}
+	}
+
+  public static void main(String[] args) throws Exception{
+	  if (args.length < 3){
+		  System.out.println("usage: java GomokuLoad <port> <games> <clients> [seed]");
+		  return;
+	  }
+	  int port = Integer.parseInt(args[0]);
+	  int games = Integer.parseInt(args[1]);
+	  int clients = Integer.parseInt(args[2]);
+	  long seed = (args.length > 3) ? Long.parseLong(args[3]) : 1;
+
+	  AtomicInteger started = new AtomicInteger();
+	  ExecutorService pool = GomokuServer.sessionExecutor();
+	  List<Future<Latencies>> results = new ArrayList<Future<Latencies>>();
+	  long start = System.nanoTime();
+	  for (int c=0; c<clients; c++){
+		  Random random = new Random(seed*31 + c);
+		  results.add(pool.submit(() -> {
+			  Latencies latencies = new Latencies();
+			  while (started.getAndIncrement() < games){
+				  playGame(port, random, latencies);
+			  }
+			  return latencies;
+		  }));
+	  }
+	  Latencies all = new Latencies();
+	  for (Future<Latencies> f : results){
+		  Latencies l = f.get();
+		  for (int i=0; i<l.count; i++){
+			  all.add(l.nanos[i]);
+		  }
+	  }
+	  double seconds = (System.nanoTime() - start) / 1e9;
+	  pool.shutdown();
+	  pool.awaitTermination(1, TimeUnit.MINUTES);
+
+	  long[] sorted = Arrays.copyOf(all.nanos, all.count);
+	  Arrays.sort(sorted);
+	  System.out.printf("%d games, %d moves in %.2f s: %.1f games/s, %.0f moves/s\n",
+			  games, sorted.length, seconds, games/seconds, sorted.length/seconds);
+	  System.out.printf("move latency p50 %.1f us, p99 %.1f us, max %.1f us\n",
+			  percentile(sorted, 0.50)/1e3, percentile(sorted, 0.99)/1e3,
+			  percentile(sorted, 1.0)/1e3);
+  }
+
+  private static long percentile(long[] sorted, double p){
+	  if (sorted.length == 0)
+		  return 0;
+	  int i = (int) Math.ceil(p * sorted.length) - 1;
+	  return sorted[Math.max(0, Math.min(i, sorted.length-1))];
+  }
+
+  // Play one game on a new connection, adding the latency of each move
+  private static void playGame(int port, Random random, Latencies latencies)
+		  throws IOException{
+	  try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)){
+		  s.setTcpNoDelay(true);
+		  BufferedReader in = new BufferedReader(
+				  new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+		  PrintWriter out = new PrintWriter(new BufferedWriter(
+				  new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)));
+		  send(out, "new 5 X O");
+		  expect(in.readLine(), "ok");
+		  //cells in a random order, so no cell is tried twice
+		  int[] cells = new int[SIZE*SIZE];
+		  for (int i=0; i<cells.length; i++){
+			  cells[i] = i;
+		  }
+		  for (int i=cells.length-1; i>0; i--){
+			  int j = random.nextInt(i+1);
+			  int t = cells[i];
+			  cells[i] = cells[j];
+			  cells[j] = t;
+		  }
+		  for (int cell : cells){
+			  long t0 = System.nanoTime();
+			  send(out, "s "+(1 + cell/SIZE)+" "+(1 + cell%SIZE));
+			  String reply = in.readLine();
+			  latencies.add(System.nanoTime() - t0);
+			  if (reply != null && reply.startsWith("win"))
+				  break;
+			  expect(reply, "ok");
+		  }
+		  send(out, "q");
+		  in.readLine();
+	  }
+  }
+
+  private static void send(PrintWriter out, String line){
+	  out.print(line);
+	  out.print('\n');
+	  out.flush();
+  }
+
+  private static void expect(String reply, String start) throws IOException{
+	  if (reply == null || !reply.startsWith(start))
+		  throw new IOException("Unexpected reply from server: "+reply);
+  }
+
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+// A PrimitiveBoard of ints stored in an int[], for games whose players
+// are small ints.  getInt() and setInt() read and write cells without
+// boxing; the ExpandableBoard<Integer> methods remain for code written
+// against the interface.  Integer.MIN_VALUE marks empty cells and
+// cannot be set or be the fill element.
+public class IntBoard extends PrimitiveBoard<Integer>{
+
+	//Cells of the storage, EMPTY where nothing is set
+	private int[] cells;
+	private static final int EMPTY = Integer.MIN_VALUE;
+
+  // Workhorse constructor, create initial space indicated by min/max
+  // row/col with fill as the fill element
+  public IntBoard(int minRow, int maxRow, int minCol, int maxCol, int fill){
+	  super(minRow, maxRow, minCol, maxCol, fill, EMPTY);
+  }
+
+  // Convenience 1-arg constructor, creates a single cell board at 0,0
+  public IntBoard(int fill){
+	  this(0,0,0,0,fill);
+  }
+
+  // Convenience 2-arg constructor, copies the elements of x with the
+  // upper left at 0,0. The copied elements are not part of the undo
+  // history.
+  public IntBoard(int[][] x, int fill){
+	  this(0,x.length-1,0,x[0].length-1,fill);
+	  for (int i=0; i<x.length; i++){
+		  for (int j=0; j<x[i].length; j++){
+			  storeInitial(i, j, x[i][j]);
+		  }
+	  }
+	  rescanLongest();
+  }
+
+  protected void allocate(int n){
+	  cells = new int[n];
+	  Arrays.fill(cells, EMPTY);
+  }
+
+  protected Object grid(){
+	  return cells;
+  }
+
+  protected int code(int index){
+	  return cells[index];
+  }
+
+  protected void store(int index, int code){
+	  cells[index] = code;
+  }
+
+  protected Integer box(int code){
+	  return code;
+  }
+
+  protected int unbox(Integer x){
+	  return x;
+  }
+
+  // Element at row/col, the fill element for empty cells
+  //
+  // Complexity: O(1)
+  public int getInt(int row, int col){
+	  return getCode(row,col);
+  }
+
+  // Set row/col to x, following the rules of set()
+  //
+  // Target Complexity: O(K) (amortized)
+  //   K: length of the runs through row/col
+  public void setInt(int row, int col, int x){
+	  setCode(row, col, x);
+  }
+
+  public int getFillInt(){
+	  return getFillCode();
+  }
+
+  public void setFillInt(int f){
+	  setFillCode(f);
+  }
+
+  // Element of the longest sequence, Integer.MIN_VALUE if nothing is set
+  public int getLongestInt(){
+	  return getLongestCode();
+  }
+
+}
@@ -0,0 +1,58 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+// ByteRuns without the Vector API: eight cells are compared at a time
+// as the bytes of a long (SWAR), then the high bit of each byte is
+// gathered into one byte of the result with a multiply.
+public class ScalarByteRuns implements ByteRuns{
+
+	//Reads 8 cells of a byte[] as one long, cell k in byte k
+	private static final VarHandle LONGS =
+		MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+	private static final long HIGH = 0x8080808080808080L;
+
+  // High bit of each byte of v that is 0, exactly
+  private static long zeroBytes(long v){
+	  return ~(((v & LOW7) + LOW7) | v | LOW7);
+  }
+
+  // Gather the high bits of the 8 bytes of v into bits 0..7
+  private static long gather(long v){
+	  return ((v >>> 7) * 0x0102040810204080L) >>> 56;
+  }
+
+  public void equalRow(byte[] cells, int a, int b, int n, long[] out){
+	  int words = (n+63) >>> 6;
+	  for (int w=0; w<words; w++){
+		  out[w] = 0;
+	  }
+	  int k = 0;
+	  for (; k+8<=n; k+=8){
+		  long x = (long) LONGS.get(cells, a+k), y = (long) LONGS.get(cells, b+k);
+		  long equal = zeroBytes(x ^ y) & ~zeroBytes(x) & HIGH;
+		  out[k >>> 6] |= gather(equal) << (k & 63);
+	  }
+	  for (; k<n; k++){
+		  if (cells[a+k] != 0 && cells[a+k] == cells[b+k])
+			  out[k >>> 6] |= 1L << (k & 63);
+	  }
+  }
+
+  public void setRow(byte[] cells, int a, int n, long[] out){
+	  int words = (n+63) >>> 6;
+	  for (int w=0; w<words; w++){
+		  out[w] = 0;
+	  }
+	  int k = 0;
+	  for (; k+8<=n; k+=8){
+		  long x = (long) LONGS.get(cells, a+k);
+		  out[k >>> 6] |= gather(~zeroBytes(x) & HIGH) << (k & 63);
+	  }
+	  for (; k<n; k++){
+		  if (cells[a+k] != 0)
+			  out[k >>> 6] |= 1L << (k & 63);
+	  }
+  }
+
+}
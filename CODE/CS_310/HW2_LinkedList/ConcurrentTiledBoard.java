@@ -0,0 +1,543 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+// An ExpandableBoard that many threads can use at once.  Like
+// TiledBoard the board is cut into square tiles of TILE_SIZE x
+// TILE_SIZE cells and only tiles holding elements are allocated.
+//
+// Reads take no locks and never wait: tiles are found in a
+// ConcurrentHashMap, cells are read from an AtomicReferenceArray and
+// the extent is an immutable object behind an atomic reference, so
+// growing it never blocks readers.  The longest sequence is kept in an
+// immutable snapshot along with the one cell, if any, whose change has
+// taken effect but is still being stored in its tile.  get() reads the
+// snapshot before the cell and answers from the snapshot for that
+// cell, so a cell is never seen without the longest sequence that goes
+// with it or the other way round.
+//
+// Writes lock stripes: each tile maps to one of STRIPES locks.  set()
+// first scans the runs through its cell without locks, then locks, in
+// order, the stripes of every tile holding those runs and the cells at
+// their ends, and scans again to check it holds all it needs.  No
+// other set() can then change a cell of those runs or extend them, so
+// sets on unrelated regions go ahead in parallel while those joining a
+// run are ordered.  The extent and the tile are grown before the set
+// takes effect.  Only recording the move, swapping in the new snapshot
+// and storing the cell are done in a short section shared by all sets,
+// so moves are recorded in the order they take effect.  undoSet() and
+// redoSet() lock out all sets while they run and publish the same way.
+//
+// Target Space Complexity: O(T * TILE_SIZE^2)
+//  T: The number of tiles holding set elements
+public class ConcurrentTiledBoard<T> implements SequenceBoard<T>{
+
+	//Tiles are 2^TILE_BITS cells on a side
+	public static final int TILE_BITS = 4;
+	public static final int TILE_SIZE = 1 << TILE_BITS;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	//Number of stripe locks, a power of 2
+	public static final int STRIPES = 64;
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
+
+	// Extent of the board; replaced rather than changed
+	private static class Extent{
+		public final int minRow, maxRow, minCol, maxCol;
+
+		public Extent(int minRow, int maxRow, int minCol, int maxCol){
+			this.minRow = minRow;
+			this.maxRow = maxRow;
+			this.minCol = minCol;
+			this.maxCol = maxCol;
+		}
+
+		public boolean contains(int row, int col){
+			return (row >= minRow)&&(row <= maxRow)&&(col >= minCol)&&(col <= maxCol);
+		}
+	}
+
+	// Longest sequence along with the cell whose change has taken effect
+	// but may not be stored in its tile yet, if pending. Replaced
+	// rather than changed.
+	private static class Snapshot<T>{
+		public final List<RowColElem<T>> longest;
+		public final boolean pending;
+		public final int row, col;
+		public final T elem;
+
+		public Snapshot(List<RowColElem<T>> longest){
+			this.longest = longest;
+			this.pending = false;
+			this.row = 0;
+			this.col = 0;
+			this.elem = null;
+		}
+
+		public Snapshot(List<RowColElem<T>> longest, int row, int col, T elem){
+			this.longest = longest;
+			this.pending = true;
+			this.row = row;
+			this.col = col;
+			this.elem = elem;
+		}
+
+		public boolean holds(int row, int col){
+			return pending && (this.row == row) && (this.col == col);
+		}
+	}
+
+	// A square block of cells along with how many of them are set so
+	// that empty tiles can be released.  The count is only changed
+	// while holding the tile's stripe or the history lock.
+	private static class Tile{
+		public final AtomicReferenceArray<Object> cells =
+				new AtomicReferenceArray<Object>(TILE_SIZE*TILE_SIZE);
+		public int count = 0;
+	}
+
+	private final AtomicReference<Extent> extent;
+	private volatile T fillElem;
+	//Allocated tiles keyed by tileKey()
+	private final ConcurrentHashMap<Long,Tile> tiles = new ConcurrentHashMap<Long,Tile>();
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+	//Sets share the read lock; undo/redo take the write lock
+	private final ReentrantReadWriteLock historyLock = new ReentrantReadWriteLock();
+	//History of sets for undo/redo. Each move's note is the longest
+	//sequence before it was made. Sets record moves holding its monitor.
+	private final MoveLog<T> history = new MoveLog<T>();
+	//Longest sequence and pending cell. Only replaced holding the history
+	//monitor or the history write lock so there is one writer at a time.
+	private volatile Snapshot<T> state =
+			new Snapshot<T>(new ArrayList<RowColElem<T>>());
+	//View of the longest sequence, see getLongestView()
+	private volatile SequenceView<T> longestView = null;
+
+  // Workhorse constructor.  Initially any get() should return the
+  // fillElem specified.  No tiles are allocated until elements are
+  // set.  The fillElem cannot be null: passing null for this
+  // parameter will result in a RuntimeException with the message
+  // "Cannot set elements to null".
+  //
+  // Runtime: O(STRIPES) (worst-case)
+  public ConcurrentTiledBoard(int minRow, int maxRow, int minCol, int maxCol, T fillElem){
+	  if (fillElem == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  extent = new AtomicReference<Extent>(new Extent(minRow, maxRow, minCol, maxCol));
+	  this.fillElem = fillElem;
+	  for (int i=0; i<STRIPES; i++){
+		  stripes[i] = new ReentrantLock();
+	  }
+  }
+
+  // Convenience 1-arg constructor, creates a single cell board with
+  // given fill element. The initial extent of the board is a single
+  // element at 0,0.
+  public ConcurrentTiledBoard(T fillElem){
+	  this(0,0,0,0,fillElem);
+  }
+
+  // Access the extent of the board: all explicitly set elements are
+  // within the bounds established by these four methods.  Each call
+  // reads the current extent, so a board growing in another thread
+  // may change between calls.
+  //
+  // Target complexity: O(1)
+  public int getMinRow(){
+	  return extent.get().minRow;
+  }
+  public int getMaxRow(){
+	  return extent.get().maxRow;
+  }
+  public int getMinCol(){
+	  return extent.get().minCol;
+  }
+  public int getMaxCol(){
+	  return extent.get().maxCol;
+  }
+
+  // Retrieve the fill element for the board.
+  public T getFillElem(){
+	  return fillElem;
+  }
+
+  // Change the fill element for the board. Empty cells are stored as
+  // null so only the field changes.
+  //
+  // Target complexity: O(1) (worst-case)
+  public void setFillElem(T f){
+	  if (f == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  fillElem = f;
+  }
+
+  // Return how many tiles are currently allocated. This method is not
+  // part of the ExpandableBoard interface.
+  public int getTileCount(){
+	  return tiles.size();
+  }
+
+  // Key of the tile holding row/col, mixed so that it hashes well. The
+  // arithmetic shift rounds negative rows/cols down to their tile.
+  private static long tileKey(int row, int col){
+	  return Zobrist.position(row >> TILE_BITS, col >> TILE_BITS);
+  }
+
+  // Position of row/col inside its tile
+  private static int tileIndex(int row, int col){
+	  return ((row & TILE_MASK) << TILE_BITS) | (col & TILE_MASK);
+  }
+
+  // Stripe lock guarding the tile holding row/col
+  private static int stripe(int row, int col){
+	  long key = tileKey(row,col);
+	  int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+	  return h >>> (32 - Integer.numberOfTrailingZeros(STRIPES));
+  }
+
+  // Element stored at row/col or null if it has not been set
+  @SuppressWarnings("unchecked")
+  private T cell(int row, int col){
+	  Tile tile = tiles.get(tileKey(row,col));
+	  if (tile == null)
+		  return null;
+	  return (T) tile.cells.get(tileIndex(row,col));
+  }
+
+  // Tile holding row/col, allocated if needed. The caller holds the
+  // stripe of row/col or the history write lock.
+  private Tile tileFor(int row, int col){
+	  long key = tileKey(row,col);
+	  Tile tile = tiles.get(key);
+	  if (tile == null){
+		  tile = new Tile();
+		  tiles.put(key,tile);
+	  }
+	  return tile;
+  }
+
+  // Make the change of row/col to x (null to empty it) take effect
+  // along with longest: the snapshot answers for the cell until it is
+  // stored in tile. The caller holds the history monitor or the history
+  // write lock.
+  private void publish(List<RowColElem<T>> longest, Tile tile, int row, int col, T x){
+	  state = new Snapshot<T>(longest, row, col, x);
+	  tile.cells.set(tileIndex(row,col), x);
+	  state = new Snapshot<T>(longest);
+  }
+
+  // Retrieve an element at virtual row/col specified. Any row/col may
+  // be requested. If it is beyond the extent of the board determined
+  // by min/max row/col, the fill element is returned.  If the element
+  // has not been explicitly set, the fill element is returned.  Never
+  // takes a lock or waits.
+  //
+  // Complexity: O(1) (expected)
+  public T get(int row, int col){
+	  if (!extent.get().contains(row,col))
+		  return fillElem;
+	  //the snapshot is read first so a change that has taken effect is
+	  //seen even if its cell is not stored yet
+	  Snapshot<T> s = state;
+	  T x = s.holds(row,col) ? s.elem : cell(row,col);
+	  return (x == null) ? fillElem : x;
+  }
+
+  // Perform expansion for the board. Only the extent changes; tiles
+  // are allocated by set(). Always return 0.  Never blocks.
+  //
+  // Target Complexity: O(1) (when uncontended)
+  public int expandToInclude(int row, int col){
+	  Extent e = extent.get();
+	  while (!e.contains(row,col)){
+		  Extent grown = new Extent(Math.min(e.minRow,row), Math.max(e.maxRow,row),
+				  Math.min(e.minCol,col), Math.max(e.maxCol,col));
+		  if (extent.compareAndSet(e, grown))
+			  break;
+		  e = extent.get();
+	  }
+	  return 0;
+  }
+
+  // Set element at row/col position to be x. Update internals to
+  // reflect that the set may have created a new longest sequence.
+  // Also update internals to allow undoSet() to be used and disable
+  // redoSet() until a set has been undone.  Once an element is set,
+  // it cannot be set again; attempts to do so raise a runtime
+  // exception with the message: "Element 4 -2 already set to XX"
+  // where the row/col indices and string representation of the
+  // element are adjusted to match the call made.  Setting an element
+  // to the fill element of board has no effect on the board.  It is
+  // not allowed to set elements of the board to be null. Attempting
+  // to do so will generate a RuntimeException with the message
+  // "Cannot set elements to null"
+  //
+  // Target Complexity: O(K + S) (expected, when uncontended)
+  //  K: length of the runs through row/col
+  //  S: number of stripes locked
+  public void set(int row, int col, T x){
+	  if (x == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  if (x.equals(fillElem))
+		  return;
+	  historyLock.readLock().lock();
+	  try{
+		  int[] held = stripesFor(row, col, x);
+		  lock(held);
+		  try{
+			  //runs may have grown into other tiles before the locks were taken
+			  int[] needed = stripesFor(row, col, x);
+			  while (!containsAll(held, needed)){
+				  unlock(held);
+				  held = union(held, needed);
+				  lock(held);
+				  needed = stripesFor(row, col, x);
+			  }
+			  T prev = cell(row,col);
+			  if (prev != null){
+				  throw new RuntimeException("Element "+row+" "+col+" already set to "
+						  +prev.toString());
+			  }
+			  //the runs are counted from the cells around row/col, so the
+			  //cell itself need not be set yet
+			  List<RowColElem<T>> run = longestRun(row,col,x);
+			  expandToInclude(row,col);
+			  Tile tile = tileFor(row,col);
+			  synchronized (history){
+				  List<RowColElem<T>> longest = state.longest;
+				  history.push(row,col,x,longest);
+				  publish((run.size() > longest.size()) ? run : longest, tile, row, col, x);
+			  }
+			  tile.count++;
+		  }
+		  finally{
+			  unlock(held);
+		  }
+	  }
+	  finally{
+		  historyLock.readLock().unlock();
+	  }
+  }
+
+  // Sorted stripes of the tiles holding the runs of x through row/col
+  // and the cells just past their ends, counting row/col as x.
+  private int[] stripesFor(int row, int col, T x){
+	  int[] found = new int[STRIPES];
+	  int n = 0;
+	  boolean[] seen = new boolean[STRIPES];
+	  for (int[] d : DIRECTIONS){
+		  for (int sign=-1; sign<=1; sign+=2){
+			  int i = row, j = col;
+			  while (true){
+				  int s = stripe(i,j);
+				  if (!seen[s]){
+					  seen[s] = true;
+					  found[n++] = s;
+				  }
+				  if ((i != row || j != col) && !x.equals(cell(i,j)))
+					  break;
+				  i += sign*d[0];
+				  j += sign*d[1];
+			  }
+		  }
+	  }
+	  int[] result = Arrays.copyOf(found, n);
+	  Arrays.sort(result);
+	  return result;
+  }
+
+  private void lock(int[] held){
+	  for (int s : held){
+		  stripes[s].lock();
+	  }
+  }
+
+  private void unlock(int[] held){
+	  for (int k=held.length-1; k>=0; k--){
+		  stripes[held[k]].unlock();
+	  }
+  }
+
+  // True if sorted stripes b are all in sorted stripes a
+  private static boolean containsAll(int[] a, int[] b){
+	  for (int s : b){
+		  if (Arrays.binarySearch(a, s) < 0)
+			  return false;
+	  }
+	  return true;
+  }
+
+  private static int[] union(int[] a, int[] b){
+	  int[] both = Arrays.copyOf(a, a.length+b.length);
+	  System.arraycopy(b, 0, both, a.length, b.length);
+	  return Arrays.stream(both).distinct().sorted().toArray();
+  }
+
+  // Retrieve the longest sequence present on the board. If there is a
+  // tie, the earliest longest sequence to appear on the board is
+  // returned.  The list returned is a copy so that it can be changed
+  // without affecting the board.  Never takes a lock.
+  //
+  // Target Complexity: O(L) (worst case)
+  //  L: length of the longest sequence
+  public List< RowColElem<T> > getLongestSequence(){
+	  return new ArrayList<RowColElem<T>>(state.longest);
+  }
+
+  // Return the longest sequence as a SequenceView. The view is made
+  // the first time it is asked for after the longest sequence changes
+  // and handed out again until the next change; a view stays tied to
+  // the list it was made from so racing callers never pair a view with
+  // the wrong sequence.  Never takes a lock.
+  //
+  // Target Complexity: O(1)
+  public SequenceView<T> getLongestView(){
+	  List<RowColElem<T>> seq = state.longest;
+	  SequenceView<T> view = longestView;
+	  if (view == null || !view.isOf(seq))
+		  longestView = view = SequenceView.of(seq);
+	  return view;
+  }
+
+  // Longest of the four runs through row/col, which holds x. Ties go to
+  // the first direction.
+  //
+  // Target Complexity: O(K)
+  //  K: length of the runs through row/col
+  private List<RowColElem<T>> longestRun(int row, int col, T x){
+	  List<RowColElem<T>> best = new ArrayList<RowColElem<T>>();
+	  for (int d=0; d<DIRECTIONS.length; d++){
+		  int dRow = DIRECTIONS[d][0], dCol = DIRECTIONS[d][1];
+		  int back = countRun(row, col, -dRow, -dCol, x);
+		  int length = back + 1 + countRun(row, col, dRow, dCol, x);
+		  if (length > best.size()){
+			  best = new ArrayList<RowColElem<T>>(length);
+			  for (int k=-back; k<length-back; k++){
+				  best.add(new RowColElem<T>(row+k*dRow, col+k*dCol, x));
+			  }
+		  }
+	  }
+	  return best;
+  }
+
+  // Count the cells past row/col in direction dRow/dCol which hold an
+  // element equal to x.
+  private int countRun(int row, int col, int dRow, int dCol, T x){
+	  int count = 0;
+	  int i = row+dRow, j = col+dCol;
+	  while (x.equals(cell(i,j))){
+		  count++;
+		  i += dRow;
+		  j += dCol;
+	  }
+	  return count;
+  }
+
+  // Undo an explicit set(row,col,x) operation by changing an element
+  // to its previous state.  Waits for sets in progress and holds off
+  // new ones.  Calls to undoSet() do not change the extent of boards.
+  // If there are no sets to undo, this method throws a runtime
+  // exception with the message "Undo history is empty"
+  //
+  // Target Complexity: O(1)
+  public void undoSet(){
+	  historyLock.writeLock().lock();
+	  try{
+		  int slot = history.undo();
+		  int row = history.row(slot), col = history.col(slot);
+		  Tile tile = tiles.get(tileKey(row,col));
+		  publish(previousLongest(slot), tile, row, col, null);
+		  if (--tile.count == 0)
+			  tiles.remove(tileKey(row,col));
+	  }
+	  finally{
+		  historyLock.writeLock().unlock();
+	  }
+  }
+
+  // Longest sequence saved with the move in slot of the history
+  @SuppressWarnings("unchecked")
+  private List<RowColElem<T>> previousLongest(int slot){
+	  return (List<RowColElem<T>>) history.note(slot);
+  }
+
+  // Redo a set that was undone via undoSet().  Waits for sets in
+  // progress and holds off new ones.  If there are no moves that can
+  // be redone this method generates a RuntimeException with the
+  // message "Redo history is empty".
+  //
+  // Target Complexity: O(K)
+  //  K: length of the runs through the redone element
+  public void redoSet(){
+	  historyLock.writeLock().lock();
+	  try{
+		  int slot = history.redo();
+		  int row = history.row(slot), col = history.col(slot);
+		  T x = history.elem(slot);
+		  List<RowColElem<T>> run = longestRun(row,col,x);
+		  Tile tile = tileFor(row,col);
+		  List<RowColElem<T>> longest = state.longest;
+		  publish((run.size() > longest.size()) ? run : longest, tile, row, col, x);
+		  tile.count++;
+	  }
+	  finally{
+		  historyLock.writeLock().unlock();
+	  }
+  }
+
+  // Limit the number of sets kept for undoSet() to maxMoves, dropping
+  // the oldest ones once the limit is reached. A limit of 0 keeps
+  // every set.
+  public void setHistoryLimit(int maxMoves){
+	  historyLock.writeLock().lock();
+	  try{
+		  history.setLimit(maxMoves);
+	  }
+	  finally{
+		  historyLock.writeLock().unlock();
+	  }
+  }
+
+  // toString() - create a pretty representation of board in the same
+  // format as the other boards.  Cells set while it runs may or may
+  // not show.
+  //
+  // Target Complexity: O(R*C)
+  //   R: number of rows
+  //   C: number of columns
+  public String toString(){
+	  Extent e = extent.get();
+	  StringBuilder builder = new StringBuilder();
+
+	  //initial top left bar and column numbers
+	  builder.append("    |");
+	  for (int j=e.minCol; j<=e.maxCol; j++){
+		  builder.append(String.format("%1$3d|", j));
+	  }
+	  //puts in divider line
+	  builder.append("\n    +");
+	  for (int j=e.minCol; j<=e.maxCol; j++){
+		  builder.append("---+");
+	  }
+	  for (int i=e.minRow; i<=e.maxRow; i++){
+		  //Adds new line and row number
+		  builder.append("\n");
+		  builder.append(String.format("%1$3d |",i));
+		  for (int j=e.minCol; j<=e.maxCol; j++){
+			  builder.append(String.format("%1$3s|", get(i,j)));
+		  }
+		  //puts in divider line
+		  builder.append("\n    +");
+		  for (int j=e.minCol; j<=e.maxCol; j++){
+			  builder.append("---+");
+		  }
+	  }
+	  builder.append("\n");
+	  return builder.toString();
+  }
+
+}
@@ -1,11 +1,29 @@
 // Implementation of the gomoku game using SparseBoard as the
-// underlying data structure
+// underlying data structure. Run with the argument "tiled" to play on
+// a TiledBoard instead, which suits games spread over a large area.
+// Run with "serve" to host many games over TCP (see GomokuServer).
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Supplier;
 
 public class GomokuS {
 
   public static void main(String args[]){
+    // "serve [port] [tiled]" hosts many games over TCP instead of one on
+    // the console; see GomokuServer for the protocol
+    if(args.length > 0 && args[0].equals("serve")){
+      boolean tiled = Arrays.asList(args).contains("tiled");
+      int port = (args.length > 1 && !args[1].equals("tiled")) ? Integer.parseInt(args[1]) : 31000;
+      if(tiled){
+        serve(port, () -> new TiledBoard<String>(1,3,1,3,""));
+      }
+      else{
+        serve(port, () -> new SparseBoard<String>(1,3,1,3,""));
+      }
+      return;
+    }
+
     Scanner in = new Scanner(System.in);
 
     int winSeqLength = 0;
@@ -36,18 +54,36 @@ public class GomokuS {
 
     System.out.println();
 
-    ExpandableBoard<String> board = new SparseBoard<String>(1,3,1,3,"");
+    ExpandableBoard<String> board;
+    if(args.length > 0 && args[0].equals("tiled")){
+      board = new TiledBoard<String>(1,3,1,3,"");
+    }
+    else{
+      board = new SparseBoard<String>(1,3,1,3,"");
+    }
+
+    // Computer player for the "a" command; playerSymbols has a dummy in
+    // slot 0 so the AI sees players 1..nPlayers
+    GomokuAI<String> ai =
+      new GomokuAI<String>(playerSymbols.subList(1,nPlayers+1), winSeqLength);
 
     int playerTurn = 1;
     int round = 1;
     while(true){
       System.out.println();
 
-      System.out.printf("%s\n",board.toString());
+      // Stream the board rather than building one big String
+      try{
+        printBoard(board);
+      }
+      catch(IOException e){
+        throw new RuntimeException(e);
+      }
+      System.out.println();
 
       // Check for a win
-      List<RowColElem<String>> longestSeq = board.getLongestSequence();
-      if(longestSeq.size() >= winSeqLength){
+      SequenceView<String> longestSeq = SequenceView.of(board);
+      if(longestSeq.length() >= winSeqLength){
         playerTurn--;
         if(playerTurn == 0){
           playerTurn = nPlayers;
@@ -86,6 +122,31 @@ public class GomokuS {
         System.out.println("            Examples                                                     ");
         System.out.println("            l          // print the longest sequence                     ");
         System.out.println("            longest    // print the longest sequence                     "); 
+        System.out.println("  a or ai: let the computer move for the player, give seconds, ends turn ");
+        System.out.println("            Examples                                                     ");
+        System.out.println("            a 1        // computer thinks for 1 second and moves         ");
+        System.out.println("            ai 5       // computer thinks for 5 seconds and moves        ");
+      }
+
+      else if(move.equals("a") || move.equals("ai")){
+        int seconds;
+        try{
+          seconds = in.nextInt();
+        }
+        catch(Exception e){
+          System.out.println("Bad input. Try again");
+          continue;
+        }
+        RowColElem<String> choice = ai.chooseMove(board, playerTurn-1, seconds*1000L);
+        System.out.printf("Computer sets %d %d (searched %d positions to depth %d)\n",
+                          choice.getRow(),choice.getCol(),
+                          ai.getNodesSearched(),ai.getDepthReached());
+        board.set(choice.getRow(),choice.getCol(),choice.getElem());
+        playerTurn++;
+        if(playerTurn > nPlayers){
+          playerTurn = 1;
+          round++;
+        }
       }
 
       else if(move.equals("s") || move.equals("set")){
@@ -158,7 +219,7 @@ public class GomokuS {
 
       else if(move.equals("l") || move.equals("longest")){
         System.out.printf("Longest sequence: %s\n",
-                          board.getLongestSequence());
+                          SequenceView.of(board));
       }      
 
       else{
@@ -167,6 +228,28 @@ public class GomokuS {
       
     }
   }
+
+  // Serve games on localhost at port until the process is stopped
+  static void serve(int port, Supplier<ExpandableBoard<String>> boards){
+    try{
+      GomokuServer server = new GomokuServer(port, boards);
+      System.out.printf("Serving Gomoku on localhost:%d\n",server.getPort());
+      server.run();
+    }
+    catch(IOException e){
+      throw new RuntimeException(e);
+    }
+  }
+
+  // Write the whole extent of board to System.out with render()
+  static void printBoard(ExpandableBoard<String> board) throws IOException{
+    int r0 = board.getMinRow(), r1 = board.getMaxRow();
+    int c0 = board.getMinCol(), c1 = board.getMaxCol();
+    if(board instanceof TiledBoard){
+      ((TiledBoard<String>) board).render(System.out,r0,r1,c0,c1);
+    }
+    else{
+      ((SparseBoard<String>) board).render(System.out,r0,r1,c0,c1);
+    }
+  }
 }
-    
-    
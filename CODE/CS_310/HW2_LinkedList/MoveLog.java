@@ -0,0 +1,265 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Undo/redo history of the sets made on a board.  Each move is kept as
+// a row, a col and a small symbol id in growable int arrays, so
+// recording a move does not allocate.  Symbols are numbered the first
+// time they are seen through a palette.  Moves that have been undone
+// stay in the arrays past the cursor until the next push() so they can
+// be redone.
+//
+// Each move may also carry a note, an object the board wants back when
+// the move is undone; boards use it for the longest sequence that was
+// in effect before the move.
+//
+// Several moves can make up one step that is undone and redone as a
+// whole: the first is recorded with push() and the rest with
+// pushJoined().  Boards undo a step by calling undo() until the slot
+// returned is not joined to the move before it, and redo a step by
+// calling redo() while nextIsJoined().
+//
+// A log may be given a limit on the number of steps it keeps. Once it
+// is full the oldest step is dropped to make room, which bounds the
+// memory used by long games at the cost of not being able to undo all
+// the way back to the start.
+//
+// Moves are addressed through slots: undo() and redo() return the slot
+// of the move they stepped over and the row/col/elem/note accessors
+// read that slot.
+public class MoveLog<T>{
+
+	//Parallel arrays used as a ring buffer of moves
+	private int[] rows, cols, ids;
+	private Object[] notes;
+	//True for moves made in the same step as the move before them
+	private boolean[] joined;
+	//Slot of the oldest move, number of moves kept, and number of those
+	//moves which are currently applied (the rest can be redone)
+	private int start = 0, count = 0, cursor = 0;
+	//Number of steps kept, that is moves which are not joined
+	private int steps = 0;
+	//Most steps kept or 0 for no limit
+	private int limit = 0;
+	//Symbol ids
+	private ArrayList<T> palette = new ArrayList<T>();
+	private HashMap<T,Integer> paletteIds = new HashMap<T,Integer>();
+
+	private static final int INITIAL_CAPACITY = 16;
+
+  // Create an empty log that keeps every move
+  public MoveLog(){
+	  this(0);
+  }
+
+  // Create an empty log that keeps at most maxMoves steps. A limit of
+  // 0 keeps every step.
+  public MoveLog(int maxMoves){
+	  setLimit(maxMoves);
+	  allocate(INITIAL_CAPACITY);
+  }
+
+  // Change the most steps kept; 0 removes the limit. If more steps are
+  // kept than the new limit allows the redo history is forgotten and
+  // then the oldest steps are dropped.
+  public void setLimit(int maxMoves){
+	  if (maxMoves < 0)
+		  throw new RuntimeException("History limit cannot be negative");
+	  limit = maxMoves;
+	  if ((limit == 0)||(steps <= limit))
+		  return;
+	  truncate(cursor);
+	  while (steps > limit)
+		  dropOldest();
+  }
+
+  public int getLimit(){
+	  return limit;
+  }
+
+  private void allocate(int capacity){
+	  rows = new int[capacity];
+	  cols = new int[capacity];
+	  ids = new int[capacity];
+	  notes = new Object[capacity];
+	  joined = new boolean[capacity];
+  }
+
+  // Physical slot of the i'th oldest move
+  private int slot(int i){
+	  return (start + i) % rows.length;
+  }
+
+  // Double the arrays, moving the oldest move to slot 0
+  private void grow(){
+	  int[] oldRows = rows, oldCols = cols, oldIds = ids;
+	  Object[] oldNotes = notes;
+	  boolean[] oldJoined = joined;
+	  allocate(2*oldRows.length);
+	  for (int i=0; i<count; i++){
+		  int from = (start + i) % oldRows.length;
+		  rows[i] = oldRows[from];
+		  cols[i] = oldCols[from];
+		  ids[i] = oldIds[from];
+		  notes[i] = oldNotes[from];
+		  joined[i] = oldJoined[from];
+	  }
+	  start = 0;
+  }
+
+  // Forget moves past the first n so their notes can be collected
+  private void truncate(int n){
+	  for (int i=n; i<count; i++){
+		  notes[slot(i)] = null;
+		  if (!joined[slot(i)])
+			  steps--;
+	  }
+	  count = n;
+  }
+
+  // Forget the oldest step along with every move joined to it
+  private void dropOldest(){
+	  do{
+		  notes[start] = null;
+		  start = (start + 1) % rows.length;
+		  count--;
+		  if (cursor > 0)
+			  cursor--;
+	  } while ((count > 0)&&joined[start]);
+	  steps--;
+  }
+
+  // Id for symbol x, numbering it if it is new
+  private int idOf(T x){
+	  Integer id = paletteIds.get(x);
+	  if (id == null){
+		  id = palette.size();
+		  palette.add(x);
+		  paletteIds.put(x, id);
+	  }
+	  return id;
+  }
+
+  // Record that x was set at row/col as a new step. Any moves that
+  // could have been redone are forgotten. If the log is at its limit
+  // the oldest step is dropped.
+  //
+  // Target Complexity: O(1) (amortized)
+  public void push(int row, int col, T x, Object note){
+	  truncate(cursor);
+	  if ((limit > 0)&&(steps == limit))
+		  dropOldest();
+	  add(row, col, x, note, false);
+	  steps++;
+  }
+
+  // Record that x was set at row/col as part of the same step as the
+  // last move recorded, which must be applied. The move has no note;
+  // the step's note is the one given to push().
+  //
+  // Target Complexity: O(1) (amortized)
+  public void pushJoined(int row, int col, T x){
+	  if (!canUndo())
+		  throw new RuntimeException("No step to join");
+	  truncate(cursor);
+	  add(row, col, x, null, true);
+  }
+
+  private void add(int row, int col, T x, Object note, boolean join){
+	  if (count == rows.length)
+		  grow();
+	  int s = slot(count);
+	  rows[s] = row;
+	  cols[s] = col;
+	  ids[s] = idOf(x);
+	  notes[s] = note;
+	  joined[s] = join;
+	  count++;
+	  cursor = count;
+  }
+
+  // Return true if any move can be undone/redone
+  public boolean canUndo(){
+	  return cursor > 0;
+  }
+
+  public boolean canRedo(){
+	  return cursor < count;
+  }
+
+  // Number of moves that can be undone
+  public int size(){
+	  return cursor;
+  }
+
+  // Number of moves kept, including those that can be redone
+  public int moves(){
+	  return count;
+  }
+
+  // Slot of the i'th oldest move kept
+  public int slotAt(int i){
+	  return slot(i);
+  }
+
+  // Step back over the last applied move and return its slot. Throws a
+  // RuntimeException with the message "Undo history is empty" if there
+  // is none.
+  //
+  // Target Complexity: O(1)
+  public int undo(){
+	  if (!canUndo())
+		  throw new RuntimeException("Undo history is empty");
+	  cursor--;
+	  return slot(cursor);
+  }
+
+  // Step forward over the next undone move and return its slot. Throws
+  // a RuntimeException with the message "Redo history is empty" if
+  // there is none.
+  //
+  // Target Complexity: O(1)
+  public int redo(){
+	  if (!canRedo())
+		  throw new RuntimeException("Redo history is empty");
+	  int s = slot(cursor);
+	  cursor++;
+	  return s;
+  }
+
+  // Return true if the next move redo() would step over is part of the
+  // same step as the move before it
+  public boolean nextIsJoined(){
+	  return canRedo() && joined[slot(cursor)];
+  }
+
+  // Forget every move
+  public void clear(){
+	  truncate(0);
+	  start = 0;
+	  cursor = 0;
+  }
+
+  // Parts of the move in a slot returned by undo() or redo()
+  public int row(int slot){
+	  return rows[slot];
+  }
+
+  public int col(int slot){
+	  return cols[slot];
+  }
+
+  public T elem(int slot){
+	  return palette.get(ids[slot]);
+  }
+
+  public Object note(int slot){
+	  return notes[slot];
+  }
+
+  // True if the move in slot is part of the same step as the move
+  // before it
+  public boolean isJoined(int slot){
+	  return joined[slot];
+  }
+
+}
@@ -0,0 +1,15 @@
+import java.util.List;
+// An ExpandableBoard that can list the elements set inside a rectangle
+// of cells.  Boards implement it when they can find those elements
+// more cheaply than calling get() on every cell of the rectangle.
+public interface RangeBoard<T> extends ExpandableBoard<T>{
+
+  // elementsInRange(r0,r1,c0,c1)
+  //
+  // Return the explicitly set elements in rows r0..r1 and cols c0..c1
+  // in row/col order.  The rectangle may reach beyond the extent of
+  // the board.  If r0 > r1 or c0 > c1 the list is empty.  The list
+  // returned is independent of the board.
+  public List<RowColElem<T>> elementsInRange(int r0, int r1, int c0, int c1);
+
+}
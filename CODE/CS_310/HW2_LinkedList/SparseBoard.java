@@ -1,24 +1,45 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.TreeSet;
+import java.util.function.Function;
 // An implemntation of an ExpandbleBoard intended to favor reduced
-// memory over speed of operations.  Most operations require O(E) time
-// to complete where E is the number of non-fill elements that have
-// been set on the board.  Internally, elements are stored in several
-// lists sorted in different orders to facilitate the calculation of
-// the longest sequence.
+// memory over speed of operations.  Internally, elements are stored
+// in a list in row/col order, a hash index by position, and several
+// sorted sets in different orders to facilitate the calculation of
+// the longest sequence.  Most operations require O(log E) time to
+// complete where E is the number of non-fill elements that have been
+// set on the board.
 // 
 // Target Space Complexity: O(E)
 //  E: The number of elements that have been set on the board
-public class SparseBoard<T> implements ExpandableBoard<T>{
+public class SparseBoard<T> implements RangeBoard<T>, BatchBoard<T>, SequenceBoard<T>, RenderBoard<T>{
 
 	private int minRow, maxRow, minCol, maxCol;
 	private T fillElem;
 	private AdditiveList<RowColElem<T>> board = new AdditiveList<RowColElem<T>>();
-//	SimpleStack<RowColElem<T>> undos = new SimpleStack<RowColElem<T>>();
-//	SimpleStack<RowColElem<T>> redos = new SimpleStack<RowColElem<T>>();
+	//Index from packed row/col to the node of board holding that element
+	private HashMap<Long,AdditiveList.Node<RowColElem<T>>> index =
+			new HashMap<Long,AdditiveList.Node<RowColElem<T>>>();
+	//History of sets for undo/redo. Each move's note is the longest
+	//sequence before it was made.
+	private MoveLog<T> history = new MoveLog<T>();
+	//Zobrist hash of the elements that are set, see positionHash()
+	private long hash = 0;
+	//Threat patterns if trackThreats() was called, otherwise null
+	private ThreatIndex<T> threats = null;
 	private List<RowColElem<T>> longest = new ArrayList<RowColElem<T>>();
+	//View of longest, see getLongestView()
+	private SequenceView<T> longestView = null;
   // Workhorse constructor.  Initially any get() should return the
   // fillElem specified. Set up all internal data structures to
   // facilitate longest sequence retrieval, undo/redo capabilities.
@@ -70,6 +91,8 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
 		  		}
 		  	}
 	  }
+	  //the copied elements are not part of the history
+	  history.clear();
   }
 
   // Access the extent of the board: all explicitly set elements are
@@ -112,110 +135,25 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
   // a board that is filled with only the fill element is the empty
   // list [].
   //
+  // The longest sequence is tracked by set(), undoSet() and redoSet()
+  // so this method only copies it.
+  //
   // Target Complexity: O(L) (worst case)
   // L: length of the longest sequence
   public List< RowColElem<T> > getLongestSequence(){
-	  //First check for longest sequence in rowCol
-	  List<RowColElem<T>> rowCol = elementsInRowColOrder();
-	  if (rowCol.size()==1){
-		  longest = new ArrayList<RowColElem<T>>();
-		  longest.add(rowCol.get(0));
-	  }
-		//Creates temp longest list to hold sequences
-	  ArrayList<RowColElem<T>> tempLongest = new ArrayList<RowColElem<T>>();
-	  for (int i=0; i<rowCol.size()-1; i++){
-	  //case previous sequence just terminated
-		  if (tempLongest.isEmpty()){
-			  tempLongest.add(rowCol.get(i));
-		  }
-		  if ((rowCol.get(i).getRow()==rowCol.get(i+1).getRow())//same row
-				  //Columns are adjacent
-				  && (rowCol.get(i).getCol()+1==rowCol.get(i+1).getCol())){
-			  //add to tempLongest
-			  tempLongest.add(rowCol.get(i+1));
-		  }
-		  //Terminate search
-		  else {
-			  tempLongest = new ArrayList<RowColElem<T>>();
-		  }
-		  //updates longest if applicable
-		  if (tempLongest.size()>longest.size())
-			  longest = tempLongest;
-	  }
-	  
-	  
-	  //checks for colRow
-	  List<RowColElem<T>> colRow = elementsInColRowOrder();
-	  tempLongest = new ArrayList<RowColElem<T>>();
-	  //same as above
-	  for (int i=0; i<colRow.size()-1; i++){
-	  //same as above
-		  if (tempLongest.isEmpty())
-			  tempLongest.add(colRow.get(i));
-		  if ((colRow.get(i).getCol()==colRow.get(i+1).getCol())//same col
-				  //Rows are adjacent
-				  && (colRow.get(i).getRow()+1==colRow.get(i+1).getRow())){
-			  //add to tempLongest
-			  tempLongest.add(colRow.get(i+1));
-		  }
-		  //if not adjacent
-		  else {
-			  tempLongest = new ArrayList<RowColElem<T>>();
-		  }
-		  //updates longest if applicable
-		  if (tempLongest.size()>longest.size())
-			  longest = tempLongest;
-	  }
-	  
-	  //Checks for longest in diagRow
-	  List<RowColElem<T>> diagRow = elementsInDiagRowOrder();
-	  //same as above
-	  tempLongest = new ArrayList<RowColElem<T>>();
-	  for (int i=0; i<diagRow.size()-1; i++){
-		  if (tempLongest.isEmpty())
-			  tempLongest.add(diagRow.get(i));
-		  RowColElem<T> tempElem = diagRow.get(i);
-		  RowColElem<T> nextElem = diagRow.get(i+1);
-		  if (((tempElem.getCol()-tempElem.getRow())==(nextElem.getCol()-nextElem.getRow()))
-				  && (diagRow.get(i).getCol()==(nextElem.getCol()-1))){
-			  //add to tempLongest
-			  tempLongest.add(nextElem);
-		  }
-		  else {
-			  tempLongest = new ArrayList<RowColElem<T>>();
-		  }
-		  //updates longest if applicable
-		  if (tempLongest.size()>longest.size())
-			  longest = tempLongest;
-	  }
-	  
-	  
-	//Checks for longest in reverseDiagRow
-	  List<RowColElem<T>> reverseDiagRow = elementsInADiagReverseRowOrder();
-	  tempLongest = new ArrayList<RowColElem<T>>();
-	  for (int i=0; i<reverseDiagRow.size()-1; i++){
-	  //same as above
-		  if (tempLongest.isEmpty())
-			  tempLongest.add(reverseDiagRow.get(i));
-			  //creates temps to save space on the line
-		  RowColElem<T> tempElem = reverseDiagRow.get(i);
-		  RowColElem<T> nextElem = reverseDiagRow.get(i+1);
-		  //conditional to see if adjacent
-		  if (((tempElem.getCol()+tempElem.getRow())==(nextElem.getCol()+nextElem.getRow()))
-				  && ((nextElem.getCol())==(tempElem.getCol()+1))){
-			  //add to tempLongest
-			  tempLongest.add(nextElem);
-		  }
-		  //terminate sequence
-		  else {
-			  tempLongest = new ArrayList<RowColElem<T>>();
-		  }
-		  //updates longest if applicable
-		  if (tempLongest.size()>longest.size())
-			  longest = tempLongest;
-	  }
-	  
-	  return longest;
+	  return new ArrayList<RowColElem<T>>(longest);
+  }
+
+  // Return the longest sequence as a SequenceView. The view is made
+  // the first time it is asked for after the longest sequence changes
+  // and handed out again until the next change.
+  //
+  // Target Complexity: O(1)
+  public SequenceView<T> getLongestView(){
+	  SequenceView<T> view = longestView;
+	  if (view == null || !view.isOf(longest))
+		  longestView = view = SequenceView.of(longest);
+	  return view;
   }
 
   // Retrieve an element at virtual row/col specified. Any row/col may
@@ -223,23 +161,23 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
   // by min/max row/col, the fill element is returned.  If the element
   // has not been explicitly set, the fill element is returned.
   // 
-  // Complexity: O(E)
-  //  E: The number of elements that have been set on the board
+  // Complexity: O(1) (expected)
   public T get(int row, int col){
   //Checks bounds
 	  if ((row > maxRow)||(row < minRow))
 		  return fillElem;
 	  if ((col > maxCol)||(col < minCol))
 		  return fillElem;
-		  //create iterator
-	  Iterator<RowColElem<T>> rowIt = board.listIterator();
-	  //iterate through list 
-	  while (rowIt.hasNext()){
-		  RowColElem<T> elem = rowIt.next();
-		  if ((elem.getRow()==row)&&(elem.getCol()==col))
-			  return elem.getElem();
-	  }
-	  return fillElem;
+	  //looks up the element in the index
+	  AdditiveList.Node<RowColElem<T>> node = index.get(key(row,col));
+	  if (node == null)
+		  return fillElem;
+	  return node.data.getElem();
+  }
+
+  // Key of row/col in the index, mixed so that it hashes well
+  private static long key(int row, int col){
+	  return Zobrist.position(row, col);
   }
 
   // Update internals to reflect an increase in the board extents by
@@ -292,161 +230,174 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
   // to do so will generate a RuntimeException with the message
   // "Cannot set elements to null"
   //
-  // Target Complexity: O(E)
+  // Checking whether the position is already set uses the index and
+  // the element is linked into the board list right after the
+  // element that precedes it in row/col order.
+  //
+  // Target Complexity: O(log E + K)
   //  E: The number of elements that have been set on the board
+  //  K: length of the runs through row/col
   public void set(int row, int col, T x){
 	  //checks for null
 	  if (x == null)
 		  throw new RuntimeException("Cannot set elements to null");
+	  if (x.equals(fillElem))
+		  return;
+	  //Case where space is already set
+	  AdditiveList.Node<RowColElem<T>> prev = index.get(key(row,col));
+	  if (prev != null){
+		  String str = "Element "+row+" "+col+" already set to "
+				  +prev.data.getElem().toString();
+		  throw new RuntimeException(str);
+	  }
 	  //expands board as necessary
 	  expandToInclude(row,col);
-	  //creates RowColElem to put in linked list
-	  RowColElem<T> place = new RowColElem<T>(row, col, x);
-	  //Creates iterator to step through each row of the board
-	  ListIterator<RowColElem<T>> rowIt = board.listIterator();
-	  while (rowIt.hasNext()){
-		  //creates temporary variable to hold each column, then iterator
-		  //to step through that column
-		  RowColElem<T> elem = rowIt.next();
-		  //Case where space is already set
-		  if ((elem.getRow()==row)&&(elem.getCol()==col)){
-			  String str = "Element "+row+" "+col+" already set to "
-					  +elem.getElem().toString();
-			  throw new RuntimeException(str);
-		  }
-		  if (!rowIt.hasNext()){
-			  rowIt.previous();
-			  rowIt.add(place);
-			  break;
-		  }
-		  
-		 
-		  //Case where row is found, but needs to be inserted
-		  else if ((elem.getRow()==row)&&(elem.getCol()>col)){
-				rowIt.previous();		//not sure whether needed
-			  rowIt.add(place);
-			  break;
-		  }
-			  //Case row not found and must be created
-		  
-		  if (elem.getRow() > row){
-			  	rowIt.previous();		//not sure whether needed
-			  	rowIt.add(place);
-			  	break;
+	  history.push(row, col, x, longest);
+	  place(row, col, x);
+  }
+
+  // Set every element of cells as a single step: one call to
+  // undoSet() removes them all and one call to redoSet() puts them
+  // back.  Elements equal to the fill element are skipped.  Every
+  // element is checked before the board is changed, so if one of them
+  // is null or its position is already set, on the board or earlier
+  // in cells, the same RuntimeException as set() is raised and the
+  // board is left as it was.  The board is expanded once to the
+  // bounding box of cells and the longest sequence before the batch
+  // is saved once for undoSet().
+  //
+  // Target Complexity: O(N*(log E + K))
+  //  N: number of elements in cells
+  //  E: The number of elements that have been set on the board
+  //  K: length of the runs through each element
+  public void setAll(Collection<RowColElem<T>> cells){
+	  //check everything and find the bounding box before changing anything
+	  HashMap<Long,T> batch = new HashMap<Long,T>();
+	  int r0 = minRow, r1 = maxRow, c0 = minCol, c1 = maxCol;
+	  for (RowColElem<T> e : cells){
+		  int row = e.getRow(), col = e.getCol();
+		  T x = e.getElem();
+		  if (x == null)
+			  throw new RuntimeException("Cannot set elements to null");
+		  if (x.equals(fillElem))
+			  continue;
+		  T prev = batch.get(key(row,col));
+		  AdditiveList.Node<RowColElem<T>> node = index.get(key(row,col));
+		  if (node != null)
+			  prev = node.data.getElem();
+		  if (prev != null){
+			  throw new RuntimeException("Element "+row+" "+col+" already set to "
+					  +prev.toString());
 		  }
-		  
-		  
+		  batch.put(key(row,col), x);
+		  r0 = Math.min(r0,row);
+		  r1 = Math.max(r1,row);
+		  c0 = Math.min(c0,col);
+		  c1 = Math.max(c1,col);
 	  }
-	  //if empty, adds to board
-	  if (board.isEmpty()){
-		  board.add(place);
+	  if (batch.isEmpty())
+		  return;
+	  expandToInclude(r0,c0);
+	  expandToInclude(r1,c1);
+	  boolean first = true;
+	  for (RowColElem<T> e : cells){
+		  T x = e.getElem();
+		  if (x.equals(fillElem))
+			  continue;
+		  if (first)
+			  history.push(e.getRow(), e.getCol(), x, longest);
+		  else
+			  history.pushJoined(e.getRow(), e.getCol(), x);
+		  first = false;
+		  place(e.getRow(), e.getCol(), x);
 	  }
-	  
-	  
-	  
-	//RowCol list add
-	  for (int i=0; i<rowColOrder.size(); i++){
-		  RowColElem<T> temp = rowColOrder.get(i);
-		  if (place.getRow()<temp.getRow()){
-			  rowColOrder.add(i,place);
-			  break;
-		  }
-		  if (place.getCol()<temp.getCol()){
-			  rowColOrder.add(i,place);
-			  break;
-		  }
-		  if (i==rowColOrder.size()-1){
-			  rowColOrder.add(place);
-			  break;
-		  }
-			  			  
+  }
+
+  // Put x at row/col in the board list, the index, the orderings, the
+  // hash and the threat index and check for a new longest sequence.
+  // Used by set() and redoSet().
+  private void place(int row, int col, T x){
+	  //creates RowColElem to put in linked list
+	  RowColElem<T> place = new RowColElem<T>(row, col, x);
+	  //links it in after its predecessor in row/col order
+	  RowColElem<T> before = rowColOrder.lower(place);
+	  AdditiveList.Node<RowColElem<T>> beforeNode = null;
+	  if (before != null)
+		  beforeNode = index.get(key(before.getRow(),before.getCol()));
+	  index.put(key(row,col), board.linkAfter(beforeNode, place));
+	  addToOrders(place);
+	  hash ^= Zobrist.key(row, col, x);
+	  if (threats != null)
+		  threats.changed(row, col, null, x);
+	  // Check longest sequence
+	  trackLongest(place);
+  }
+
+  // Add or remove an element from the four orderings
+  private void addToOrders(RowColElem<T> place){
+	  rowColOrder.add(place);
+	  colRowOrder.add(place);
+	  diagRowOrder.add(place);
+	  diagReverseRowOrder.add(place);
+  }
+
+  private void removeFromOrders(RowColElem<T> place){
+	  rowColOrder.remove(place);
+	  colRowOrder.remove(place);
+	  diagRowOrder.remove(place);
+	  diagReverseRowOrder.remove(place);
+  }
+
+  // Check the four orderings around a newly placed element. Elements
+  // next to each other in an ordering which are also next to each
+  // other on the board form a run. A run through place which is
+  // strictly longer than the current longest sequence replaces it so
+  // ties keep the earliest sequence. The previous longest sequence is
+  // saved in the history by set() so undoSet() can restore it.
+  //
+  // Target Complexity: O(K log E)
+  //  K: length of the runs through place
+  private void trackLongest(RowColElem<T> place){
+	  checkRun(rowColOrder, place, 0, 1);
+	  checkRun(colRowOrder, place, 1, 0);
+	  checkRun(diagRowOrder, place, 1, 1);
+	  checkRun(diagReverseRowOrder, place, -1, 1);
+  }
+
+  // Walk outward from place in an ordering whose successive elements
+  // on a line are dRow/dCol apart and update longest if the run found
+  // is longer.
+  private void checkRun(TreeSet<RowColElem<T>> order, RowColElem<T> place,
+		  int dRow, int dCol){
+	  RowColElem<T> first = place, last = place;
+	  int length = 1;
+	  RowColElem<T> next = order.lower(first);
+	  while (adjacent(next, first, dRow, dCol)){
+		  first = next;
+		  next = order.lower(first);
+		  length++;
 	  }
-		  //Checks if list is empty
-	  if (rowColOrder.isEmpty()){
-		  rowColOrder.add(place);
+	  next = order.higher(last);
+	  while (adjacent(last, next, dRow, dCol)){
+		  last = next;
+		  next = order.higher(last);
+		  length++;
 	  }
-		  
-		  //Adds element to colRow list
-		  //List<RowColElem<T>> colRowOrder = elementsInColRowOrder();
-		  for (int i=0; i<colRowOrder.size(); i++){
-			  RowColElem<T> temp = colRowOrder.get(i);
-			  //looks for where to put it
-			  if (place.getCol()<temp.getCol()){
-				  colRowOrder.add(i,place);
-				  break;
-			  }
-			  if (place.getRow()<temp.getRow()){
-				  colRowOrder.add(i,place);
-				  break;
-			  }			
-			  if (i==colRowOrder.size()-1){
-				  colRowOrder.add(place);
-				  break;
-			  }
-		  }
-		  if (colRowOrder.isEmpty()){
-			  colRowOrder.add(place);
-		  }
-		  
-		  //Adds element to diagRow List
-		  //List<RowColElem<T>> diagRowOrder = elementsInDiagRowOrder();
-		  
-		  for (int i=0; i<diagRowOrder.size(); i++){
-			  //same as above, but for different list
-			  RowColElem<T> temp = diagRowOrder.get(i);
-			  if ((temp.getCol()-temp.getRow())>(place.getCol()-place.getRow())){
-				  diagRowOrder.add(i,place);
-				  break;
-			  }
-			  if(place.getCol()<temp.getCol()){
-				  diagRowOrder.add(i,place);/*
-			  for (int j=i+1; j<diagRowOrder.size(); j++){
-				  temp = diagRowOrder.get(j);
-				  diagRowOrder.set(j, temp);
-			  }*/
-			  break;
-				  }			
-			  if (i==diagRowOrder.size()-1){
-				  diagRowOrder.add(place);
-				  break;
-			  }
+	  if (length > longest.size()){
+		  List<RowColElem<T>> seq = new ArrayList<RowColElem<T>>(length);
+		  for (RowColElem<T> e : order.subSet(first, true, last, true)){
+			  seq.add(e);
 		  }
-		  
-		  if (diagRowOrder.isEmpty()){
-			  diagRowOrder.add(place);
-		  }
-		  
-		  
-		  //adding to diagReverseRowOrder
-		  
-		  for (int i=0; i<diagReverseRowOrder.size(); i++){
-			  //same idea as above
-			  RowColElem<T> temp = diagReverseRowOrder.get(i);
-			  if ((temp.getCol()+temp.getRow())>(place.getCol()+place.getRow())){ 
-				  diagReverseRowOrder.add(i,place);
-				  break;
-			  }
-			  if ((temp.getCol()>place.getCol())&&((temp.getCol()+temp.getRow())==
-					  (place.getCol()+place.getRow()))){
-				  diagReverseRowOrder.add(i,place);
-				  break;
-			  }	
-			  if (i==diagReverseRowOrder.size()-1){
-				  diagReverseRowOrder.add(place);
-				  break;
-			  }
-		  }
-		  if (diagReverseRowOrder.isEmpty()){
-			  diagReverseRowOrder.add(place);
-		  }
-	  
-	  //now do undo/redo stuff
-//	  redos = new SimpleStack<RowColElem<T>>();
-//	  undos.push(place);
-	  
-	  
-	  // Check longest sequence
-	  longest = getLongestSequence();
+		  longest = seq;
+	  }
+  }
+
+  // True if b is dRow/dCol past a on the board and holds an equal
+  // element. Either may be null at the ends of an ordering.
+  private boolean adjacent(RowColElem<T> a, RowColElem<T> b, int dRow, int dCol){
+	  return (a != null)&&(b != null)
+			  &&(a.getRow()+dRow == b.getRow())&&(a.getCol()+dCol == b.getCol())
+			  &&(a.getElem().equals(b.getElem()));
   }
 
   // Produce copies of the internal lists of the explicitly set
@@ -459,24 +410,95 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
   // Target Complexity: O(E) (worst-case)
   
 
-  private ArrayList<RowColElem<T>> colRowOrder = new ArrayList<RowColElem<T>>();
-  private ArrayList<RowColElem<T>> rowColOrder = new ArrayList<RowColElem<T>>();
-  private ArrayList<RowColElem<T>> diagRowOrder = new ArrayList<RowColElem<T>>();
-  private ArrayList<RowColElem<T>> diagReverseRowOrder = new ArrayList<RowColElem<T>>();
+  // Each ordering is kept in a TreeSet so adding or removing an
+  // element is O(log E).
+  //   rowCol:            row, then col
+  //   colRow:            col, then row
+  //   diagRow:           col-row, then row
+  //   diagReverseRow:    row+col, then row descending
+  private TreeSet<RowColElem<T>> rowColOrder = new TreeSet<RowColElem<T>>(
+		  new Comparator<RowColElem<T>>(){
+			  public int compare(RowColElem<T> a, RowColElem<T> b){
+				  return compareBy(a.getRow(), b.getRow(), a.getCol(), b.getCol());
+			  }
+		  });
+  private TreeSet<RowColElem<T>> colRowOrder = new TreeSet<RowColElem<T>>(
+		  new Comparator<RowColElem<T>>(){
+			  public int compare(RowColElem<T> a, RowColElem<T> b){
+				  return compareBy(a.getCol(), b.getCol(), a.getRow(), b.getRow());
+			  }
+		  });
+  private TreeSet<RowColElem<T>> diagRowOrder = new TreeSet<RowColElem<T>>(
+		  new Comparator<RowColElem<T>>(){
+			  public int compare(RowColElem<T> a, RowColElem<T> b){
+				  return compareBy(a.getCol()-a.getRow(), b.getCol()-b.getRow(),
+						  a.getRow(), b.getRow());
+			  }
+		  });
+  private TreeSet<RowColElem<T>> diagReverseRowOrder = new TreeSet<RowColElem<T>>(
+		  new Comparator<RowColElem<T>>(){
+			  public int compare(RowColElem<T> a, RowColElem<T> b){
+				  return compareBy(a.getRow()+a.getCol(), b.getRow()+b.getCol(),
+						  b.getRow(), a.getRow());
+			  }
+		  });
+
+  // Compare by a major key and break ties with a minor key
+  private static int compareBy(int majorA, int majorB, int minorA, int minorB){
+	  if (majorA != majorB)
+		  return (majorA < majorB) ? -1 : 1;
+	  if (minorA != minorB)
+		  return (minorA < minorB) ? -1 : 1;
+	  return 0;
+  }
+
+  // Return the explicitly set elements in rows r0..r1 and cols c0..c1
+  // in row/col order.  The row/col ordering is walked from r0,c0; when
+  // it leaves the columns of the rectangle it jumps straight to c0 of
+  // the row it should continue on, so rows without elements in the
+  // rectangle cost a single search.
+  //
+  // Target Complexity: O((S+1) log E + K)
+  //  S: number of rows in r0..r1 holding set elements
+  //  E: The number of elements that have been set on the board
+  //  K: number of elements returned
+  public List<RowColElem<T>> elementsInRange(int r0, int r1, int c0, int c1){
+	  List<RowColElem<T>> found = new ArrayList<RowColElem<T>>();
+	  if ((r0 > r1)||(c0 > c1))
+		  return found;
+	  RowColElem<T> e = rowColOrder.ceiling(new RowColElem<T>(r0,c0,null));
+	  while ((e != null)&&(e.getRow() <= r1)){
+		  if (e.getCol() < c0){
+			  e = rowColOrder.ceiling(new RowColElem<T>(e.getRow(),c0,null));
+		  }
+		  else if (e.getCol() <= c1){
+			  found.add(e);
+			  e = rowColOrder.higher(e);
+		  }
+		  else if (e.getRow() < r1){
+			  e = rowColOrder.ceiling(new RowColElem<T>(e.getRow()+1,c0,null));
+		  }
+		  else{
+			  break;
+		  }
+	  }
+	  return found;
+  }
+
   public List<RowColElem<T>> elementsInRowColOrder(){
-	  return rowColOrder;
+	  return new ArrayList<RowColElem<T>>(rowColOrder);
   }
 
   public List<RowColElem<T>> elementsInColRowOrder(){
-	  return colRowOrder;
+	  return new ArrayList<RowColElem<T>>(colRowOrder);
   }
 
   public List<RowColElem<T>> elementsInDiagRowOrder(){
-	  return diagRowOrder;
+	  return new ArrayList<RowColElem<T>>(diagRowOrder);
   }
 
   public List<RowColElem<T>> elementsInADiagReverseRowOrder(){
-	  return diagReverseRowOrder;
+	  return new ArrayList<RowColElem<T>>(diagReverseRowOrder);
   }
 
   // Undo an explicit set(row,col,x) operation by changing an element
@@ -489,13 +511,37 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
   // method throws a runtime exception with the message
   // "Undo history is empty"
   //
-  // Target Complexity: O(1) (worst case)
+  // Target Complexity: O(log E)
+  //  E: The number of elements that have been set on the board
   public void undoSet(){
-	  if (!board.canUndo())
-		  throw new RuntimeException("Undo history is empty");
-	 //calls additiveList's undo method 
-	  board.undo();
-	 
+	  //step back in the history; throws if it is empty
+	  int slot = history.undo();
+	  unplace(slot);
+	  //the rest of a setAll() batch
+	  while (history.isJoined(slot)){
+		  slot = history.undo();
+		  unplace(slot);
+	  }
+	  longest = previousLongest(slot);
+  }
+
+  // Take the element set by the move in slot of the history out of the
+  // board list, the index, the orderings, the hash and the threat
+  // index.
+  private void unplace(int slot){
+	  AdditiveList.Node<RowColElem<T>> node =
+			  index.remove(key(history.row(slot),history.col(slot)));
+	  board.unlink(node);
+	  removeFromOrders(node.data);
+	  hash ^= Zobrist.key(node.data.getRow(), node.data.getCol(), node.data.getElem());
+	  if (threats != null)
+		  threats.changed(node.data.getRow(), node.data.getCol(), node.data.getElem(), null);
+  }
+
+  // Longest sequence saved with the move in slot of the history
+  @SuppressWarnings("unchecked")
+  private List<RowColElem<T>> previousLongest(int slot){
+	  return (List<RowColElem<T>>) history.note(slot);
   }
 
   // Redo a set that was undone via undoSet().  Every call to
@@ -507,13 +553,169 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
   // or undoSet() has not been called, this method generates a
   // RuntimeException with the message "Redo history is empty".
   //
-  // Target Complexity: O(1)
+  // Target Complexity: O(K log E)
+  //  K: length of the runs through the redone element
   public void redoSet(){
-	  if (!board.canRedo())
-		  throw new RuntimeException("Redo history is empty");
-		  //calls additivelist's redo method
-	  board.redo();
-	  
+	  //step forward in the history; throws if nothing was undone
+	  int slot = history.redo();
+	  place(history.row(slot), history.col(slot), history.elem(slot));
+	  //the rest of a setAll() batch
+	  while (history.nextIsJoined()){
+		  slot = history.redo();
+		  place(history.row(slot), history.col(slot), history.elem(slot));
+	  }
+  }
+
+  // Return a 64-bit Zobrist hash of the elements set on the board.
+  // Boards with the same elements at the same positions have the same
+  // hash regardless of the order of the sets, their extent or their
+  // fill element, which makes it suitable as a key for transposition
+  // tables.  The hash is kept up to date by set(), undoSet() and
+  // redoSet().
+  //
+  // Target Complexity: O(1)
+  public long positionHash(){
+	  return hash;
+  }
+
+  // Start keeping a ThreatIndex of the board for a game won with
+  // winLength in a row and return it. The index is kept up to date by
+  // set(), undoSet() and redoSet() until trackThreats() is called
+  // again.
+  //
+  // Target Complexity: O(R*C + E * winLength^2)
+  //   R: number of rows
+  //   C: number of columns
+  //   E: number of elements set
+  public ThreatIndex<T> trackThreats(int winLength){
+	  threats = new ThreatIndex<T>(this, winLength);
+	  return threats;
+  }
+
+  // Limit the number of sets (or setAll() batches) kept for undoSet()
+  // to maxMoves, dropping the oldest ones once the limit is reached. A
+  // limit of 0 keeps every set.
+  public void setHistoryLimit(int maxMoves){
+	  history.setLimit(maxMoves);
+  }
+
+  // Write a binary snapshot of the board to out: its extent, fill
+  // element, elements and undo/redo history in the format described in
+  // BoardSnapshot.  The elements are written in row/col order, each as
+  // a varint count of rows down from the element before it, then a
+  // varint col, counted from the element before it when on the same
+  // row and from minCol otherwise, and a varint palette id.  Elements
+  // are written with toString() so they must be readable by the parse
+  // function given to loadFrom().
+  //
+  // Target Complexity: O(E + H)
+  //  E: The number of elements that have been set on the board
+  //  H: number of moves in the history
+  public void saveTo(OutputStream stream) throws IOException{
+	  DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+	  BoardSnapshot<T> snapshot = new BoardSnapshot<T>(fillElem);
+	  for (RowColElem<T> e : rowColOrder){
+		  snapshot.idOf(e.getElem());
+	  }
+	  snapshot.addHistory(history, longest);
+	  snapshot.writeHeader(out, BoardSnapshot.SPARSE, minRow, maxRow, minCol, maxCol);
+	  BoardSnapshot.writeVarint(out, rowColOrder.size());
+	  long prevRow = minRow, prevCol = minCol-1L;
+	  for (RowColElem<T> e : rowColOrder){
+		  BoardSnapshot.writeVarint(out, e.getRow()-prevRow);
+		  if (e.getRow() == prevRow)
+			  BoardSnapshot.writeVarint(out, e.getCol()-prevCol-1);
+		  else
+			  BoardSnapshot.writeVarint(out, e.getCol()-(long)minCol);
+		  BoardSnapshot.writeVarint(out, snapshot.idOf(e.getElem()));
+		  prevRow = e.getRow();
+		  prevCol = e.getCol();
+	  }
+	  snapshot.writeHistory(out, history, longest);
+	  out.flush();
+  }
+
+  // Create a board from a snapshot written by saveTo(). The file is
+  // memory-mapped. Each element is made from the string written for it
+  // by parse; for a board of Strings pass s -> s.
+  //
+  // Target Complexity: O(E log E + H*(log E + K))
+  //  E: The number of elements in the snapshot
+  //  H: number of moves in the history
+  //  K: length of the runs through each element
+  public static <T> SparseBoard<T> loadFrom(Path path, Function<String,T> parse)
+		  throws IOException{
+	  return read(BoardSnapshot.map(path), parse);
+  }
+
+  // Same as above but reads the snapshot from a stream
+  public static <T> SparseBoard<T> loadFrom(InputStream in, Function<String,T> parse)
+		  throws IOException{
+	  return read(BoardSnapshot.readAll(in), parse);
+  }
+
+  // The elements arrive in row/col order so each is linked in at the
+  // end of the board list. The moves of the history which were applied
+  // are then taken off again and the history is rebuilt by replaying
+  // every move and undoing those which had been undone, which also
+  // brings back the longest sequence before each.
+  private static <T> SparseBoard<T> read(ByteBuffer in, Function<String,T> parse){
+	  int[] extent = BoardSnapshot.readHeader(in, BoardSnapshot.SPARSE);
+	  List<T> palette = BoardSnapshot.readPalette(in, parse);
+	  SparseBoard<T> b = new SparseBoard<T>(extent[0], extent[1], extent[2], extent[3],
+			  palette.get(0));
+	  int count = BoardSnapshot.readCount(in);
+	  AdditiveList.Node<RowColElem<T>> last = null;
+	  long row = b.minRow, col = b.minCol-1L;
+	  for (int k=0; k<count; k++){
+		  long down = BoardSnapshot.readVarint(in);
+		  col = ((down == 0) ? col+1 : b.minCol) + BoardSnapshot.readVarint(in);
+		  row += down;
+		  if ((down < 0)||(row > b.maxRow)||(col < b.minCol)||(col > b.maxCol))
+			  throw new RuntimeException("Bad board snapshot");
+		  RowColElem<T> e = new RowColElem<T>((int) row, (int) col,
+				  BoardSnapshot.readSymbol(in, palette));
+		  last = b.board.linkAfter(last, e);
+		  b.index.put(key(e.getRow(),e.getCol()), last);
+		  b.addToOrders(e);
+		  b.hash ^= Zobrist.key(e.getRow(), e.getCol(), e.getElem());
+	  }
+	  BoardSnapshot.Moves<T> moves = BoardSnapshot.readHistory(in, palette);
+	  for (int m=0; m<moves.applied; m++){
+		  AdditiveList.Node<RowColElem<T>> node = b.index.remove(key(moves.rows[m],moves.cols[m]));
+		  if ((node == null)||!node.data.getElem().equals(moves.elems.get(m)))
+			  throw new RuntimeException("Bad board snapshot");
+		  b.board.unlink(node);
+		  b.removeFromOrders(node.data);
+		  b.hash ^= Zobrist.key(node.data.getRow(), node.data.getCol(), node.data.getElem());
+	  }
+	  for (RowColElem<T> e : moves.longest){
+		  AdditiveList.Node<RowColElem<T>> node = b.index.get(key(e.getRow(),e.getCol()));
+		  if ((node == null)||!node.data.getElem().equals(e.getElem()))
+			  throw new RuntimeException("Bad board snapshot");
+	  }
+	  b.longest = moves.longest;
+	  b.replay(moves);
+	  return b;
+  }
+
+  // Rebuild the history from moves, leaving the board as it was saved
+  private void replay(BoardSnapshot.Moves<T> moves){
+	  history.setLimit(moves.limit);
+	  for (int m=0; m<moves.rows.length; m++){
+		  int row = moves.rows[m], col = moves.cols[m];
+		  T x = moves.elems.get(m);
+		  if ((row < minRow)||(row > maxRow)||(col < minCol)||(col > maxCol)
+				  ||index.containsKey(key(row,col)))
+			  throw new RuntimeException("Bad board snapshot");
+		  if (moves.joined[m])
+			  history.pushJoined(row, col, x);
+		  else
+			  history.push(row, col, x, longest);
+		  place(row, col, x);
+	  }
+	  while (history.size() > moves.applied)
+		  undoSet();
   }
 
   // toString() - create a pretty representation of board.
@@ -550,90 +752,88 @@ public class SparseBoard<T> implements ExpandableBoard<T>{
   // Constraint: No array or arraylist allocation is allowed in this
   // method.
   // 
-  // Note: to adhere to target runtime complexity employ a
-  // StringBuilder and an iterator over an internal list of the boards
-  // set elements.
+  // The board is rendered into a StringBuilder by render().
   public String toString(){
-	  String bb = "";
 	  StringBuilder builder = new StringBuilder();
-	  
-	  //initial top left bar
-	  builder.append("    |");
-	  
-	  //puts column numbers
-	  for (int j=0; j<maxCol-minCol+1;j++){
-		  builder.append(String.format("%1$3d|", minCol+j));
+	  try{
+		  render(builder, minRow, maxRow, minCol, maxCol);
 	  }
-	  
-	  //puts in divider line
-	  builder.append("\n    +");
-	  for (int k=0; k<maxCol-minCol+1;k++){
-		  builder.append("---+");
+	  catch (IOException e){
+		  //a StringBuilder never throws
+		  throw new RuntimeException(e);
 	  }
-	  //shortcut if no elements have been explicitly set
-	  if (rowColOrder.isEmpty()){
-		  for (int i=0; i<=maxRow-minRow;i++){
-			  //Adds new line and row number
-			  builder.append("\n");
-			  builder.append(String.format("%1$3d |",minRow+i));
-			  
-			  //Loop to put in board elements
-			  for (int j=0; j<=maxCol-minCol;j++){
-				  builder.append(String.format("%1$3s|", fillElem));
-			  }
-			  
-			  //puts in divider line
-			  builder.append("\n    +");
-			  for (int k=0; k<maxCol-minCol+1;k++){
-				  builder.append("---+");
+	  return builder.toString();
+  }
+
+  // Write a pretty representation of the part of the board in rows
+  // r0..r1 and cols c0..c1 to out, in the same format as toString().
+  // The viewport may reach beyond the extent of the board; cells there
+  // show the fill element.  Nothing is built up in memory so a large
+  // board can be written straight to a Writer or PrintStream.
+  //
+  // Only the set elements inside the viewport are visited: each row
+  // reads the slice of the row/col ordering between c0 and c1.
+  //
+  // Target Complexity: O((r1-r0+1)*(c1-c0+1 + log E))
+  //  E: The number of elements that have been set on the board
+  public void render(Appendable out, int r0, int r1, int c0, int c1) throws IOException{
+	  String fill = fillElem.toString();
+	  appendHeader(out, c0, c1);
+	  for (int i=r0; i<=r1; i++){
+		  appendRowLabel(out, i);
+		  int j = c0;
+		  if ((c0 <= c1)&&(i >= minRow)&&(i <= maxRow)){
+			  for (RowColElem<T> e : rowColOrder.subSet(new RowColElem<T>(i,c0,null), true,
+					  new RowColElem<T>(i,c1,null), true)){
+				  for (; j<e.getCol(); j++){
+					  appendCell(out, fill);
+				  }
+				  appendCell(out, e.getElem().toString());
+				  j++;
 			  }
 		  }
-		  bb = builder.toString()+"\n";
-		  return bb;
+		  for (; j<=c1; j++){
+			  appendCell(out, fill);
+		  }
+		  appendDivider(out, c0, c1);
 	  }
-	  
-	  
-	  //for when elements have been set
-	  ListIterator<RowColElem<T>> rowIt = board.listIterator();
-	  //makes rowColElem from iterator
-	  RowColElem<T> temp1;
-	  
-	  //fails a lot of tests without the try-catch
-	  try{
-		  temp1 = rowIt.next();
-	  } catch (RuntimeException e){
-		  temp1 = rowIt.previous();
+	  out.append('\n');
+  }
+
+  // Append s to out right aligned in a field of 3 characters followed
+  // by a bar, like String.format("%1$3s|",s) without the allocation
+  private static void appendCell(Appendable out, String s) throws IOException{
+	  for (int k=s.length(); k<3; k++){
+		  out.append(' ');
 	  }
-	  for (int i=minRow; i<=maxRow; i++){
-			//add newline and row number
-		  builder.append("\n");
-		  builder.append(String.format("%1$3d |",i));
-		  for (int j=minCol; j<= maxCol; j++){
-			  if (temp1.getCol()==j && temp1.getRow()==i){
-					//add to string builder
-					//increment temp1/rowIter
-				  builder.append(String.format("%1$3s|", temp1.getElem()));
-				  //again, needs this
-				  try{
-					  temp1 = rowIt.next();
-				  } catch (RuntimeException e){
-					  temp1 = rowIt.previous();
-				  }
-				}
-			  else{
-					//add fillElem to builder
-				  builder.append(String.format("%1$3s|", fillElem));
-				}
-			}
-		//puts in divider line
-		  builder.append("\n    +");
-		  for (int k=0; k<maxCol-minCol+1;k++){
-			  builder.append("---+");
-		  }
+	  out.append(s).append('|');
+  }
+
+  // Column numbers and the divider line under them
+  private static void appendHeader(Appendable out, int c0, int c1) throws IOException{
+	  //initial top left bar and column numbers
+	  out.append("    |");
+	  for (int j=c0; j<=c1; j++){
+		  appendCell(out, Integer.toString(j));
+	  }
+	  appendDivider(out, c0, c1);
+  }
+
+  private static void appendDivider(Appendable out, int c0, int c1) throws IOException{
+	  out.append("\n    +");
+	  for (int j=c0; j<=c1; j++){
+		  out.append("---+");
+	  }
+  }
+
+  // Newline and the label at the start of row i
+  private static void appendRowLabel(Appendable out, int i) throws IOException{
+	  out.append('\n');
+	  String label = Integer.toString(i);
+	  for (int k=label.length(); k<3; k++){
+		  out.append(' ');
 	  }
-	 
-	  bb = builder.toString()+"\n";
-	  return bb;
+	  out.append(label).append(" |");
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+import java.util.HashMap;
+import java.util.Map;
+// Counts of the threat patterns each player has on a Gomoku board,
+// kept up to date one changed cell at a time.
+//
+// Patterns are counted through windows along rows, columns and both
+// diagonals.  A window of winLength cells that holds k stones of one
+// player and nothing else is a k-window for that player: a window with
+// winLength-1 stones is a four whether or not it is broken, and one
+// with winLength stones is a win.  An open window is winLength+1 cells
+// long with both end cells empty and k stones of one player and
+// nothing else between them: _XXXX_ is an open four and _XXX__ or
+// _X_XX_ are open threes.  A pattern lying in several windows is
+// counted once per window.
+//
+// Only the windows through a changed cell can change so changed()
+// only reads the 2*winLength+1 cells of each of the four lines through
+// it.  Queries read a counter.
+//
+// Target Space Complexity: O(E + P * winLength)
+//  E: number of stones
+//  P: number of players
+public class ThreatIndex<T>{
+
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
+
+	private final int winLength;
+	//Stones by packed row/col
+	private HashMap<Long,T> stones = new HashMap<Long,T>();
+	//Number of k-windows and open k-windows of each player, indexed by k
+	private HashMap<T,int[]> counts = new HashMap<T,int[]>();
+	private HashMap<T,int[]> openCounts = new HashMap<T,int[]>();
+	//Cells of the line through a changed cell, the changed cell in the
+	//middle; null for empty cells
+	private Object[] line;
+
+  // Create an index of an empty board for a game won with winLength in
+  // a row.
+  public ThreatIndex(int winLength){
+	  if (winLength <= 0)
+		  throw new RuntimeException("Winning length must be positive");
+	  this.winLength = winLength;
+	  line = new Object[2*winLength+1];
+  }
+
+  // Create an index of the elements currently on board. Cells holding
+  // the fill element are empty.
+  //
+  // Target Complexity: O(R*C + E * winLength^2)
+  //   R: number of rows
+  //   C: number of columns
+  public ThreatIndex(ExpandableBoard<T> board, int winLength){
+	  this(winLength);
+	  for (int i=board.getMinRow(); i<=board.getMaxRow(); i++){
+		  for (int j=board.getMinCol(); j<=board.getMaxCol(); j++){
+			  T x = board.get(i,j);
+			  if (!x.equals(board.getFillElem()))
+				  changed(i, j, null, x);
+		  }
+	  }
+  }
+
+  // Create an index with the same stones and counts as other that can
+  // be changed without changing other.
+  //
+  // Target Complexity: O(E + P * winLength)
+  public ThreatIndex(ThreatIndex<T> other){
+	  this(other.winLength);
+	  stones.putAll(other.stones);
+	  for (Map.Entry<T,int[]> e : other.counts.entrySet()){
+		  counts.put(e.getKey(), e.getValue().clone());
+	  }
+	  for (Map.Entry<T,int[]> e : other.openCounts.entrySet()){
+		  openCounts.put(e.getKey(), e.getValue().clone());
+	  }
+  }
+
+  public int getWinLength(){
+	  return winLength;
+  }
+
+  // Update the counts for row/col changing from before to after. Either
+  // may be null for an empty cell. Boards call this from set(),
+  // undoSet() and redoSet().
+  //
+  // Target Complexity: O(winLength^2) (expected)
+  public void changed(int row, int col, T before, T after){
+	  for (int[] d : DIRECTIONS){
+		  for (int i=-winLength; i<=winLength; i++){
+			  line[i+winLength] = (i == 0) ? before
+					  : stones.get(key(row+i*d[0], col+i*d[1]));
+		  }
+		  countLine(-1);
+		  line[winLength] = after;
+		  countLine(1);
+	  }
+	  if (after == null)
+		  stones.remove(key(row,col));
+	  else
+		  stones.put(key(row,col), after);
+  }
+
+  private static long key(int row, int col){
+	  return Zobrist.position(row, col);
+  }
+
+  // Add sign to the count of every window in line that holds its
+  // middle cell.
+  private void countLine(int sign){
+	  //k-windows are line[s..s+winLength-1] for s in 1..winLength
+	  for (int s=1; s<=winLength; s++){
+		  tally(counts, s, s+winLength-1, sign);
+	  }
+	  //open windows are line[s..s+winLength] for s in 0..winLength
+	  for (int s=0; s<=winLength; s++){
+		  if ((line[s] == null)&&(line[s+winLength] == null))
+			  tally(openCounts, s+1, s+winLength-1, sign);
+	  }
+  }
+
+  // Add sign to table for the player owning every stone in
+  // line[from..to], if there is only one such player.
+  @SuppressWarnings("unchecked")
+  private void tally(HashMap<T,int[]> table, int from, int to, int sign){
+	  Object owner = null;
+	  int k = 0;
+	  for (int i=from; i<=to; i++){
+		  if (line[i] == null)
+			  continue;
+		  if (owner == null)
+			  owner = line[i];
+		  else if (!owner.equals(line[i]))
+			  return;
+		  k++;
+	  }
+	  if (k == 0)
+		  return;
+	  int[] row = table.get(owner);
+	  if (row == null){
+		  row = new int[winLength+1];
+		  table.put((T) owner, row);
+	  }
+	  row[k] += sign;
+  }
+
+  // Number of windows of winLength cells holding exactly stones
+  // elements of player and nothing else.
+  //
+  // Target Complexity: O(1) (expected)
+  public int getCount(T player, int stones){
+	  return lookup(counts, player, stones);
+  }
+
+  // Number of windows of winLength+1 cells with both ends empty and
+  // exactly stones elements of player and nothing else between them.
+  //
+  // Target Complexity: O(1) (expected)
+  public int getOpenCount(T player, int stones){
+	  return lookup(openCounts, player, stones);
+  }
+
+  private int lookup(HashMap<T,int[]> table, T player, int stones){
+	  int[] row = table.get(player);
+	  if ((row == null)||(stones <= 0)||(stones > winLength))
+		  return 0;
+	  return row[stones];
+  }
+
+  // Common threats, named for the usual winLength of 5
+  public int getFours(T player){
+	  return getCount(player, winLength-1);
+  }
+
+  public int getOpenFours(T player){
+	  return getOpenCount(player, winLength-1);
+  }
+
+  public int getOpenThrees(T player){
+	  return getOpenCount(player, winLength-2);
+  }
+
+}
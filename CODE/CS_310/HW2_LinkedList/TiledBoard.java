@@ -0,0 +1,399 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+// An implementation of an ExpandableBoard intended for boards whose
+// elements are scattered over a very large area.  The board is cut
+// into square tiles of TILE_SIZE x TILE_SIZE cells and only tiles that
+// hold at least one explicitly set element are allocated.  Tiles are
+// found through a hash map keyed by the packed tile row/col so get()
+// and set() do not depend on the extent of the board or on the number
+// of elements set.  Expanding the board only changes the extent.
+//
+// Target Space Complexity: O(T * TILE_SIZE^2)
+//  T: The number of tiles holding set elements
+public class TiledBoard<T> implements SequenceBoard<T>, RenderBoard<T>{
+
+	//Tiles are 2^TILE_BITS cells on a side
+	public static final int TILE_BITS = 5;
+	public static final int TILE_SIZE = 1 << TILE_BITS;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
+
+	private int minRow, maxRow, minCol, maxCol;
+	private T fillElem;
+	//Allocated tiles keyed by tileKey()
+	private HashMap<Long,Tile> tiles = new HashMap<Long,Tile>();
+	//History of sets for undo/redo. Each move's note is the longest
+	//sequence before it was made.
+	private MoveLog<T> history = new MoveLog<T>();
+	//Longest sequence
+	private List<RowColElem<T>> longest = new ArrayList<RowColElem<T>>();
+	//View of longest, see getLongestView()
+	private SequenceView<T> longestView = null;
+
+	// A square block of cells along with how many of them are set so
+	// that empty tiles can be released.
+	private static class Tile{
+		public Object[] cells = new Object[TILE_SIZE*TILE_SIZE];
+		public int count = 0;
+	}
+
+  // Workhorse constructor.  Initially any get() should return the
+  // fillElem specified.  No tiles are allocated until elements are
+  // set.  The fillElem cannot be null: passing null for this
+  // parameter will result in a RuntimeException with the message
+  // "Cannot set elements to null".
+  //
+  // Runtime: O(1) (worst-case)
+  public TiledBoard(int minRow, int maxRow, int minCol, int maxCol, T fillElem){
+	  if (fillElem == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  this.minRow = minRow;
+	  this.maxRow = maxRow;
+	  this.minCol = minCol;
+	  this.maxCol = maxCol;
+	  this.fillElem = fillElem;
+  }
+
+  // Convenience 1-arg constructor, creates a single cell board with
+  // given fill element. The initial extent of the board is a single
+  // element at 0,0.
+  public TiledBoard(T fillElem){
+	  this(0,0,0,0,fillElem);
+  }
+
+  // Convenience 2-arg constructor, creates a board with given fill
+  // element and copies elements from T 2-D array. Assumes upper left
+  // is coordinate 0,0 and lower right is size of 2-D array.  The
+  // board does not have any undo/redo history but has a longest
+  // sequence calculated from the contents of 2-D array.
+  public TiledBoard(T[][] x, T fillElem){
+	  this(0,x.length-1,0,x[0].length-1,fillElem);
+	  for (int i=0; i<=maxRow; i++){
+		  for (int j=0; j<=maxCol; j++){
+			  if (!x[i][j].equals(fillElem)){
+				  set(i,j,x[i][j]);
+			  }
+		  }
+	  }
+	  history.clear();
+  }
+
+  // Access the extent of the board: all explicitly set elements are
+  // within the bounds established by these four methods.
+  //
+  // Target complexity: O(1)
+  public int getMinRow(){
+	  return minRow;
+  }
+  public int getMaxRow(){
+	  return maxRow;
+  }
+  public int getMinCol(){
+	  return minCol;
+  }
+  public int getMaxCol(){
+	  return maxCol;
+  }
+
+  // Retrieve the fill element for the board.
+  public T getFillElem(){
+	  return fillElem;
+  }
+
+  // Change the fill element for the board. Empty cells are stored as
+  // null so only the field changes.
+  //
+  // Target complexity: O(1) (worst-case)
+  public void setFillElem(T f){
+	  if (f == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  fillElem = f;
+  }
+
+  // Return how many tiles are currently allocated. This method is not
+  // part of the ExpandableBoard interface.
+  public int getTileCount(){
+	  return tiles.size();
+  }
+
+  // Key of the tile holding row/col, mixed so that it hashes well. The
+  // arithmetic shift rounds negative rows/cols down to their tile.
+  private static long tileKey(int row, int col){
+	  return Zobrist.position(row >> TILE_BITS, col >> TILE_BITS);
+  }
+
+  // Position of row/col inside its tile
+  private static int tileIndex(int row, int col){
+	  return ((row & TILE_MASK) << TILE_BITS) | (col & TILE_MASK);
+  }
+
+  // Element stored at row/col or null if it has not been set
+  @SuppressWarnings("unchecked")
+  private T cell(int row, int col){
+	  Tile tile = tiles.get(tileKey(row,col));
+	  if (tile == null)
+		  return null;
+	  return (T) tile.cells[tileIndex(row,col)];
+  }
+
+  // Store x at row/col, allocating its tile if needed. Storing null
+  // empties the cell and releases the tile once nothing is left in it.
+  private void setCell(int row, int col, T x){
+	  long key = tileKey(row,col);
+	  Tile tile = tiles.get(key);
+	  if (tile == null){
+		  tile = new Tile();
+		  tiles.put(key,tile);
+	  }
+	  int index = tileIndex(row,col);
+	  if (tile.cells[index] == null && x != null)
+		  tile.count++;
+	  else if (tile.cells[index] != null && x == null)
+		  tile.count--;
+	  tile.cells[index] = x;
+	  if (tile.count == 0)
+		  tiles.remove(key);
+  }
+
+  // Retrieve an element at virtual row/col specified. Any row/col may
+  // be requested. If it is beyond the extent of the board determined
+  // by min/max row/col, the fill element is returned.  If the element
+  // has not been explicitly set, the fill element is returned.
+  //
+  // Complexity: O(1) (expected)
+  public T get(int row, int col){
+	  if ((row > maxRow)||(row < minRow)||(col > maxCol)||(col < minCol))
+		  return fillElem;
+	  T x = cell(row,col);
+	  if (x == null)
+		  return fillElem;
+	  return x;
+  }
+
+  // Perform expansion for the board. Only the extent changes; tiles
+  // are allocated by set(). Always return 0.
+  //
+  // Target Complexity: O(1) (worst-case)
+  public int expandToInclude(int row, int col){
+	  minRow = Math.min(minRow,row);
+	  maxRow = Math.max(maxRow,row);
+	  minCol = Math.min(minCol,col);
+	  maxCol = Math.max(maxCol,col);
+	  return 0;
+  }
+
+  // Set element at row/col position to be x. Update internals to
+  // reflect that the set may have created a new longest sequence.
+  // Also update internals to allow undoSet() to be used and disable
+  // redoSet() until a set has been undone.  Once an element is set,
+  // it cannot be set again; attempts to do so raise a runtime
+  // exception with the message: "Element 4 -2 already set to XX"
+  // where the row/col indices and string representation of the
+  // element are adjusted to match the call made.  Setting an element
+  // to the fill element of board has no effect on the board.  It is
+  // not allowed to set elements of the board to be null. Attempting
+  // to do so will generate a RuntimeException with the message
+  // "Cannot set elements to null"
+  //
+  // Target Complexity: O(K) (expected)
+  //  K: length of the runs through row/col
+  public void set(int row, int col, T x){
+	  if (x == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  if (x.equals(fillElem))
+		  return;
+	  T prev = cell(row,col);
+	  if (prev != null){
+		  throw new RuntimeException("Element "+row+" "+col+" already set to "
+				  +prev.toString());
+	  }
+	  expandToInclude(row,col);
+	  setCell(row,col,x);
+	  history.push(row,col,x,longest);
+	  trackLongest(row,col,x);
+  }
+
+  // Retrieve the longest sequence present on the board. If there is a
+  // tie, the earliest longest sequence to appear on the board is
+  // returned.  The list returned is a copy so that it can be changed
+  // without affecting the board.
+  //
+  // Target Complexity: O(L) (worst case)
+  //  L: length of the longest sequence
+  public List< RowColElem<T> > getLongestSequence(){
+	  return new ArrayList<RowColElem<T>>(longest);
+  }
+
+  // Return the longest sequence as a SequenceView. The view is made
+  // the first time it is asked for after the longest sequence changes
+  // and handed out again until the next change.
+  //
+  // Target Complexity: O(1)
+  public SequenceView<T> getLongestView(){
+	  SequenceView<T> view = longestView;
+	  if (view == null || !view.isOf(longest))
+		  longestView = view = SequenceView.of(longest);
+	  return view;
+  }
+
+  // Check the four lines running through row/col after x has been
+  // placed there. A strictly longer run replaces the longest sequence
+  // so ties keep the earliest one. The previous longest sequence is
+  // saved in the history by the caller for undoSet().
+  //
+  // Target Complexity: O(K)
+  //  K: length of the runs through row/col
+  private void trackLongest(int row, int col, T x){
+	  for (int d=0; d<DIRECTIONS.length; d++){
+		  int dRow = DIRECTIONS[d][0], dCol = DIRECTIONS[d][1];
+		  int back = countRun(row, col, -dRow, -dCol, x);
+		  int length = back + 1 + countRun(row, col, dRow, dCol, x);
+		  if (length > longest.size()){
+			  longest = new ArrayList<RowColElem<T>>(length);
+			  for (int k=-back; k<length-back; k++){
+				  longest.add(new RowColElem<T>(row+k*dRow, col+k*dCol, x));
+			  }
+		  }
+	  }
+  }
+
+  // Count the cells past row/col in direction dRow/dCol which hold an
+  // element equal to x.
+  private int countRun(int row, int col, int dRow, int dCol, T x){
+	  int count = 0;
+	  int i = row+dRow, j = col+dCol;
+	  while (x.equals(cell(i,j))){
+		  count++;
+		  i += dRow;
+		  j += dCol;
+	  }
+	  return count;
+  }
+
+  // Undo an explicit set(row,col,x) operation by changing an element
+  // to its previous state.  Calls to undoSet() do not change the
+  // extent of boards.  If there are no sets to undo, this method
+  // throws a runtime exception with the message "Undo history is
+  // empty"
+  //
+  // Target Complexity: O(1)
+  public void undoSet(){
+	  int slot = history.undo();
+	  setCell(history.row(slot),history.col(slot),null);
+	  longest = previousLongest(slot);
+  }
+
+  // Longest sequence saved with the move in slot of the history
+  @SuppressWarnings("unchecked")
+  private List<RowColElem<T>> previousLongest(int slot){
+	  return (List<RowColElem<T>>) history.note(slot);
+  }
+
+  // Redo a set that was undone via undoSet().  If there are no moves
+  // that can be redone this method generates a RuntimeException with
+  // the message "Redo history is empty".
+  //
+  // Target Complexity: O(K)
+  //  K: length of the runs through the redone element
+  public void redoSet(){
+	  int slot = history.redo();
+	  int row = history.row(slot), col = history.col(slot);
+	  T x = history.elem(slot);
+	  setCell(row,col,x);
+	  trackLongest(row,col,x);
+  }
+
+  // Limit the number of sets kept for undoSet() to maxMoves, dropping
+  // the oldest ones once the limit is reached. A limit of 0 keeps
+  // every set.
+  public void setHistoryLimit(int maxMoves){
+	  history.setLimit(maxMoves);
+  }
+
+  // toString() - create a pretty representation of board in the same
+  // format as the other boards. The board is rendered into a
+  // StringBuilder by render().
+  //
+  // Target Complexity: O(R*C)
+  //   R: number of rows
+  //   C: number of columns
+  public String toString(){
+	  StringBuilder builder = new StringBuilder();
+	  try{
+		  render(builder, minRow, maxRow, minCol, maxCol);
+	  }
+	  catch (IOException e){
+		  //a StringBuilder never throws
+		  throw new RuntimeException(e);
+	  }
+	  return builder.toString();
+  }
+
+  // Write a pretty representation of the part of the board in rows
+  // r0..r1 and cols c0..c1 to out, in the same format as toString().
+  // The viewport may reach beyond the extent of the board; cells there
+  // show the fill element.  Nothing is built up in memory so a large
+  // board can be written straight to a Writer or PrintStream.
+  //
+  // Each row looks up a tile once per TILE_SIZE columns.
+  //
+  // Target Complexity: O((r1-r0+1)*(c1-c0+1))
+  public void render(Appendable out, int r0, int r1, int c0, int c1) throws IOException{
+	  String fill = fillElem.toString();
+	  appendHeader(out, c0, c1);
+	  for (int i=r0; i<=r1; i++){
+		  appendRowLabel(out, i);
+		  boolean inRows = (i >= minRow)&&(i <= maxRow);
+		  Tile tile = null;
+		  for (int j=c0; j<=c1; j++){
+			  if ((j == c0)||((j & TILE_MASK) == 0))
+				  tile = inRows ? tiles.get(tileKey(i,j)) : null;
+			  Object x = ((tile == null)||(j < minCol)||(j > maxCol)) ? null
+					  : tile.cells[tileIndex(i,j)];
+			  appendCell(out, (x == null) ? fill : x.toString());
+		  }
+		  appendDivider(out, c0, c1);
+	  }
+	  out.append('\n');
+  }
+
+  // Append s to out right aligned in a field of 3 characters followed
+  // by a bar, like String.format("%1$3s|",s) without the allocation
+  private static void appendCell(Appendable out, String s) throws IOException{
+	  for (int k=s.length(); k<3; k++){
+		  out.append(' ');
+	  }
+	  out.append(s).append('|');
+  }
+
+  // Column numbers and the divider line under them
+  private static void appendHeader(Appendable out, int c0, int c1) throws IOException{
+	  //initial top left bar and column numbers
+	  out.append("    |");
+	  for (int j=c0; j<=c1; j++){
+		  appendCell(out, Integer.toString(j));
+	  }
+	  appendDivider(out, c0, c1);
+  }
+
+  private static void appendDivider(Appendable out, int c0, int c1) throws IOException{
+	  out.append("\n    +");
+	  for (int j=c0; j<=c1; j++){
+		  out.append("---+");
+	  }
+  }
+
+  // Newline and the label at the start of row i
+  private static void appendRowLabel(Appendable out, int i) throws IOException{
+	  out.append('\n');
+	  String label = Integer.toString(i);
+	  for (int k=label.length(); k<3; k++){
+		  out.append(' ');
+	  }
+	  out.append(label).append(" |");
+  }
+
+}
@@ -0,0 +1,283 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+// Pieces of the binary snapshot format shared by the boards' saveTo()
+// and loadFrom() methods.
+//
+// A snapshot starts with a header: the MAGIC number, a byte for the
+// kind of board and a byte for the format VERSION.  Then comes the
+// extent and a palette of symbols written as strings, the fill element
+// first, so cells and moves can refer to a symbol by its position in
+// the palette.  The layout of the cells depends on the kind of board.
+// Last comes the undo/redo history: the history limit, the number of
+// moves, how many of them are applied and then each move's row, col,
+// palette id and whether it is joined to the move before it.  The
+// history ends with the longest sequence the board had before its
+// oldest move, since ties go to the earliest sequence to appear and
+// the order older elements were set in is not kept.
+//
+// Integers are written as varints: 7 bits per byte, low bits first,
+// with the high bit set on every byte but the last.  Signed values are
+// zigzag encoded first so that small negative numbers stay short.
+//
+// Snapshots are read from a ByteBuffer, which loadFrom() gets by
+// memory-mapping the file or by reading a stream fully.  A snapshot
+// that is cut short or otherwise malformed raises a RuntimeException
+// with the message "Bad board snapshot".
+public class BoardSnapshot<T>{
+
+	public static final int MAGIC = 0x47424E31;
+	public static final byte VERSION = 1;
+	//Kinds of boards
+	public static final byte DENSE = 1, SPARSE = 2;
+
+	//Palette being built for writing
+	private ArrayList<T> palette = new ArrayList<T>();
+	private HashMap<T,Integer> ids = new HashMap<T,Integer>();
+
+  // Start a palette for writing a board whose fill element is fill
+  public BoardSnapshot(T fill){
+	  idOf(fill);
+  }
+
+  // Palette id of x, adding it to the palette if it is new
+  public int idOf(T x){
+	  Integer id = ids.get(x);
+	  if (id == null){
+		  id = palette.size();
+		  palette.add(x);
+		  ids.put(x, id);
+	  }
+	  return id;
+  }
+
+  // Write the header, extent and palette. Every symbol must have been
+  // given an id by idOf() first.
+  public void writeHeader(DataOutputStream out, byte kind, int minRow, int maxRow,
+		  int minCol, int maxCol) throws IOException{
+	  out.writeInt(MAGIC);
+	  out.writeByte(kind);
+	  out.writeByte(VERSION);
+	  writeSigned(out, minRow);
+	  writeSigned(out, maxRow);
+	  writeSigned(out, minCol);
+	  writeSigned(out, maxCol);
+	  writeVarint(out, palette.size());
+	  for (T x : palette){
+		  writeString(out, x.toString());
+	  }
+  }
+
+  // Check the header of a snapshot of the given kind and return the
+  // extent as {minRow, maxRow, minCol, maxCol}.
+  public static int[] readHeader(ByteBuffer in, byte kind){
+	  try{
+		  if ((in.getInt() != MAGIC)||(in.get() != kind)||(in.get() != VERSION))
+			  throw new RuntimeException("Bad board snapshot");
+	  }
+	  catch (BufferUnderflowException e){
+		  throw new RuntimeException("Bad board snapshot");
+	  }
+	  int[] extent = new int[4];
+	  for (int i=0; i<4; i++){
+		  extent[i] = readSigned(in);
+	  }
+	  if ((extent[0] > extent[1])||(extent[2] > extent[3]))
+		  throw new RuntimeException("Bad board snapshot");
+	  return extent;
+  }
+
+  // Read the palette, turning each symbol back into an element with
+  // parse. The fill element comes first.
+  public static <T> List<T> readPalette(ByteBuffer in, Function<String,T> parse){
+	  int size = readCount(in);
+	  if (size == 0)
+		  throw new RuntimeException("Bad board snapshot");
+	  List<T> palette = new ArrayList<T>(size);
+	  for (int i=0; i<size; i++){
+		  palette.add(parse.apply(readString(in)));
+	  }
+	  return palette;
+  }
+
+  // Symbol with the palette id read next from in
+  public static <T> T readSymbol(ByteBuffer in, List<T> palette){
+	  int id = readCount(in);
+	  if (id >= palette.size())
+		  throw new RuntimeException("Bad board snapshot");
+	  return palette.get(id);
+  }
+
+  // Write the moves of history and the longest sequence before them.
+  // Their symbols must have been given ids by addHistory() first.
+  public void writeHistory(DataOutputStream out, MoveLog<T> history,
+		  List<RowColElem<T>> longest) throws IOException{
+	  writeVarint(out, history.getLimit());
+	  writeVarint(out, history.moves());
+	  writeVarint(out, history.size());
+	  for (int i=0; i<history.moves(); i++){
+		  int slot = history.slotAt(i);
+		  writeSigned(out, history.row(slot));
+		  writeSigned(out, history.col(slot));
+		  writeVarint(out, idOf(history.elem(slot)));
+		  out.writeByte(history.isJoined(slot) ? 1 : 0);
+	  }
+	  List<RowColElem<T>> first = firstLongest(history, longest);
+	  writeVarint(out, first.size());
+	  for (RowColElem<T> e : first){
+		  writeSigned(out, e.getRow());
+		  writeSigned(out, e.getCol());
+		  writeVarint(out, idOf(e.getElem()));
+	  }
+  }
+
+  // Give ids to the symbols of the moves in history and of the longest
+  // sequence before them
+  public void addHistory(MoveLog<T> history, List<RowColElem<T>> longest){
+	  for (int i=0; i<history.moves(); i++){
+		  idOf(history.elem(history.slotAt(i)));
+	  }
+	  for (RowColElem<T> e : firstLongest(history, longest)){
+		  idOf(e.getElem());
+	  }
+  }
+
+  // Longest sequence before the oldest move in history, which the
+  // board saved as the move's note, or longest if there are no moves
+  @SuppressWarnings("unchecked")
+  private static <T> List<RowColElem<T>> firstLongest(MoveLog<T> history,
+		  List<RowColElem<T>> longest){
+	  if (history.moves() == 0)
+		  return longest;
+	  return (List<RowColElem<T>>) history.note(history.slotAt(0));
+  }
+
+  // Moves of a history read back by readHistory()
+  public static class Moves<T>{
+	  public int limit, applied;
+	  public int[] rows, cols;
+	  public List<T> elems = new ArrayList<T>();
+	  public boolean[] joined;
+	  //Longest sequence before the first move
+	  public List<RowColElem<T>> longest = new ArrayList<RowColElem<T>>();
+  }
+
+  public static <T> Moves<T> readHistory(ByteBuffer in, List<T> palette){
+	  Moves<T> moves = new Moves<T>();
+	  moves.limit = readCount(in);
+	  int count = readCount(in);
+	  moves.applied = readCount(in);
+	  if ((moves.applied > count)||(count > in.remaining()))
+		  throw new RuntimeException("Bad board snapshot");
+	  moves.rows = new int[count];
+	  moves.cols = new int[count];
+	  moves.joined = new boolean[count];
+	  for (int i=0; i<count; i++){
+		  moves.rows[i] = readSigned(in);
+		  moves.cols[i] = readSigned(in);
+		  moves.elems.add(readSymbol(in, palette));
+		  moves.joined[i] = (readByte(in) != 0);
+		  if ((i == 0)&&moves.joined[i])
+			  throw new RuntimeException("Bad board snapshot");
+	  }
+	  int length = readCount(in);
+	  if (length > in.remaining())
+		  throw new RuntimeException("Bad board snapshot");
+	  for (int i=0; i<length; i++){
+		  int row = readSigned(in);
+		  int col = readSigned(in);
+		  moves.longest.add(new RowColElem<T>(row, col, readSymbol(in, palette)));
+	  }
+	  return moves;
+  }
+
+  // Memory-map the file at path for reading
+  public static ByteBuffer map(Path path) throws IOException{
+	  try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+		  return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	  }
+  }
+
+  // Read all of in into a buffer
+  public static ByteBuffer readAll(InputStream in) throws IOException{
+	  ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	  byte[] chunk = new byte[8192];
+	  for (int n=in.read(chunk); n >= 0; n=in.read(chunk)){
+		  bytes.write(chunk, 0, n);
+	  }
+	  return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  public static void writeVarint(DataOutputStream out, long v) throws IOException{
+	  while ((v & ~0x7FL) != 0){
+		  out.writeByte((int) ((v & 0x7F) | 0x80));
+		  v >>>= 7;
+	  }
+	  out.writeByte((int) v);
+  }
+
+  public static void writeSigned(DataOutputStream out, int v) throws IOException{
+	  writeVarint(out, ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+  }
+
+  public static long readVarint(ByteBuffer in){
+	  long v = 0;
+	  for (int shift=0; shift<64; shift+=7){
+		  byte b = readByte(in);
+		  v |= (long) (b & 0x7F) << shift;
+		  if ((b & 0x80) == 0)
+			  return v;
+	  }
+	  throw new RuntimeException("Bad board snapshot");
+  }
+
+  public static int readSigned(ByteBuffer in){
+	  long v = readVarint(in);
+	  if (v > 0xFFFFFFFFL)
+		  throw new RuntimeException("Bad board snapshot");
+	  int z = (int) v;
+	  return (z >>> 1) ^ -(z & 1);
+  }
+
+  // Read a varint that counts or indexes something and so must fit in a
+  // non-negative int
+  public static int readCount(ByteBuffer in){
+	  long v = readVarint(in);
+	  if (v > Integer.MAX_VALUE)
+		  throw new RuntimeException("Bad board snapshot");
+	  return (int) v;
+  }
+
+  private static byte readByte(ByteBuffer in){
+	  if (!in.hasRemaining())
+		  throw new RuntimeException("Bad board snapshot");
+	  return in.get();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException{
+	  byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+	  writeVarint(out, bytes.length);
+	  out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer in){
+	  int length = readCount(in);
+	  if (length > in.remaining())
+		  throw new RuntimeException("Bad board snapshot");
+	  byte[] bytes = new byte[length];
+	  in.get(bytes);
+	  return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,88 @@
+// A PrimitiveBoard of chars stored in a char[], for games whose players
+// are single characters.  getChar() and setChar() read and write cells
+// without boxing; the ExpandableBoard<Character> methods remain for
+// code written against the interface.  '\0' marks empty cells and
+// cannot be set or be the fill element.
+public class CharBoard extends PrimitiveBoard<Character>{
+
+	//Cells of the storage, EMPTY where nothing is set
+	private char[] cells;
+	private static final char EMPTY = '\0';
+
+  // Workhorse constructor, create initial space indicated by min/max
+  // row/col with fill as the fill element
+  public CharBoard(int minRow, int maxRow, int minCol, int maxCol, char fill){
+	  super(minRow, maxRow, minCol, maxCol, fill, EMPTY);
+  }
+
+  // Convenience 1-arg constructor, creates a single cell board at 0,0
+  public CharBoard(char fill){
+	  this(0,0,0,0,fill);
+  }
+
+  // Convenience 2-arg constructor, copies the elements of x with the
+  // upper left at 0,0. The copied elements are not part of the undo
+  // history.
+  public CharBoard(char[][] x, char fill){
+	  this(0,x.length-1,0,x[0].length-1,fill);
+	  for (int i=0; i<x.length; i++){
+		  for (int j=0; j<x[i].length; j++){
+			  storeInitial(i, j, x[i][j]);
+		  }
+	  }
+	  rescanLongest();
+  }
+
+  protected void allocate(int n){
+	  cells = new char[n];
+  }
+
+  protected Object grid(){
+	  return cells;
+  }
+
+  protected int code(int index){
+	  return cells[index];
+  }
+
+  protected void store(int index, int code){
+	  cells[index] = (char) code;
+  }
+
+  protected Character box(int code){
+	  return (char) code;
+  }
+
+  protected int unbox(Character x){
+	  return x;
+  }
+
+  // Element at row/col, the fill element for empty cells
+  //
+  // Complexity: O(1)
+  public char getChar(int row, int col){
+	  return (char) getCode(row,col);
+  }
+
+  // Set row/col to x, following the rules of set()
+  //
+  // Target Complexity: O(K) (amortized)
+  //   K: length of the runs through row/col
+  public void setChar(int row, int col, char x){
+	  setCode(row, col, x);
+  }
+
+  public char getFillChar(){
+	  return (char) getFillCode();
+  }
+
+  public void setFillChar(char f){
+	  setFillCode(f);
+  }
+
+  // Element of the longest sequence, '\0' if nothing is set
+  public char getLongestChar(){
+	  return (char) getLongestCode();
+  }
+
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+// Serves many games of Gomoku at once over TCP on localhost, one game
+// per connection, each on a board of its own.
+//
+// The protocol is one command per line with one reply line per
+// command, mirroring the console game:
+//
+//   new 5 X O    start a game won by 5 in a row between players X and O
+//                (any number of players, each a symbol without spaces)
+//   s 3 -2       set 3,-2 for the player whose turn it is
+//   e 3 8        expand the board to include 3,8
+//   u            undo the last move
+//   r            redo the last undone move
+//   l            show the longest sequence
+//   b            show the board
+//   q            end the session
+//
+// Replies start with "ok", "win" or "error".  Moves are answered with
+// "ok <player> <symbol>" naming whose turn is next, or once a move
+// makes the winning length with "win <player> <symbol> <sequence>";
+// after a win only u, l, b and q are accepted.  b replies "ok <n>" and
+// then the n lines of the board, rendered straight to the connection.
+// A line starting with "error" is followed by the message of what went
+// wrong.
+//
+// Each session runs on its own virtual thread, so a session waiting
+// for its next command holds no platform thread.  Virtual threads
+// came with Java 21; older JVMs run sessions on a cached pool of
+// platform threads instead.
+public class GomokuServer{
+
+	private ServerSocket socket;
+	private Supplier<ExpandableBoard<String>> boards;
+	private ExecutorService sessions = sessionExecutor();
+
+  // Listen on localhost at port, 0 for any free port, playing each
+  // game on a new board from boards.
+  public GomokuServer(int port, Supplier<ExpandableBoard<String>> boards) throws IOException{
+	  this.boards = boards;
+	  socket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+  }
+
+  // Executor running each session on a thread of its own: a virtual
+  // thread where the JVM has them.
+  public static ExecutorService sessionExecutor(){
+	  try{
+		  return (ExecutorService) Executors.class
+			  .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	  }
+	  catch (ReflectiveOperationException e){
+		  return Executors.newCachedThreadPool();
+	  }
+  }
+
+  public int getPort(){
+	  return socket.getLocalPort();
+  }
+
+  // Accept connections until close() is called
+  public void run() throws IOException{
+	  try{
+		  while (true){
+			  Socket client = socket.accept();
+			  sessions.execute(() -> play(client));
+		  }
+	  }
+	  catch (IOException e){
+		  if (!socket.isClosed())
+			  throw e;
+	  }
+  }
+
+  // Stop accepting connections. Sessions already running carry on.
+  public void close() throws IOException{
+	  socket.close();
+	  sessions.shutdown();
+  }
+
+  // Run one session on client
+  private void play(Socket client){
+	  try (Socket s = client){
+		  s.setTcpNoDelay(true);
+		  BufferedReader in = new BufferedReader(
+				  new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+		  PrintWriter out = new PrintWriter(new BufferedWriter(
+				  new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)));
+		  Game game = null;
+		  for (String line=in.readLine(); line != null; line=in.readLine()){
+			  String[] words = line.trim().split("\\s+");
+			  String reply;
+			  if (words[0].equals("q") || words[0].equals("quit")){
+				  out.print("ok bye\n");
+				  out.flush();
+				  return;
+			  }
+			  else if (words[0].equals("new")){
+				  //a bad new leaves the game in progress alone
+				  Game started = newGame(words);
+				  if (started != null)
+					  game = started;
+				  reply = (started == null) ? "error Usage: new <length> <symbol> <symbol>..."
+					  : game.turn();
+			  }
+			  else if (game == null)
+				  reply = "error No game, start one with new";
+			  else if (words[0].equals("b") || words[0].equals("board")){
+				  game.writeBoard(out);
+				  out.flush();
+				  continue;
+			  }
+			  else
+				  reply = game.command(words);
+			  out.print(reply);
+			  out.print('\n');
+			  out.flush();
+		  }
+	  }
+	  catch (IOException e){
+		  //the client went away
+	  }
+  }
+
+  private Game newGame(String[] words){
+	  if (words.length < 3)
+		  return null;
+	  int length;
+	  try{
+		  length = Integer.parseInt(words[1]);
+	  }
+	  catch (NumberFormatException e){
+		  return null;
+	  }
+	  if (length <= 0)
+		  return null;
+	  List<String> players = new ArrayList<String>();
+	  for (int i=2; i<words.length; i++){
+		  players.add(words[i]);
+	  }
+	  return new Game(boards.get(), length, players);
+  }
+
+  // The state of one game: its board, players and whose turn it is
+  private static class Game{
+	  ExpandableBoard<String> board;
+	  int winLength;
+	  List<String> players;
+	  //Index into players of whose turn it is
+	  int turn = 0;
+
+	  Game(ExpandableBoard<String> board, int winLength, List<String> players){
+		  this.board = board;
+		  this.winLength = winLength;
+		  this.players = players;
+	  }
+
+	  boolean won(){
+		  return SequenceView.of(board).length() >= winLength;
+	  }
+
+	  // Reply to a move: whose turn is next or who has won
+	  String turn(){
+		  if (won()){
+			  //the winner made the last move
+			  int winner = (turn + players.size() - 1) % players.size();
+			  return "win "+(winner+1)+" "+players.get(winner)+" "+SequenceView.of(board);
+		  }
+		  return "ok "+(turn+1)+" "+players.get(turn);
+	  }
+
+	  // Reply to b: "ok <n>" and then the n lines of the board, two for
+	  // each row and two for the column header. Boards that can render
+	  // themselves are written straight to out.
+	  void writeBoard(PrintWriter out) throws IOException{
+		  int r0 = board.getMinRow(), r1 = board.getMaxRow();
+		  out.print("ok "+(2*(r1-r0+1)+2)+"\n");
+		  if (board instanceof RenderBoard)
+			  ((RenderBoard<String>) board).render(out, r0, r1, board.getMinCol(), board.getMaxCol());
+		  else
+			  out.print(board.toString());
+	  }
+
+	  String command(String[] words){
+		  String c = words[0];
+		  try{
+			  if (c.equals("s") || c.equals("set")){
+				  if (won())
+					  return "error Game is over";
+				  int row = Integer.parseInt(words[1]), col = Integer.parseInt(words[2]);
+				  board.set(row, col, players.get(turn));
+				  turn = (turn+1) % players.size();
+				  return turn();
+			  }
+			  else if (c.equals("e") || c.equals("expand")){
+				  if (!(board instanceof BatchBoard))
+					  return "error Board cannot expand";
+				  int row = Integer.parseInt(words[1]), col = Integer.parseInt(words[2]);
+				  int n = ((BatchBoard<String>) board).expandToInclude(row, col);
+				  return "ok "+n+" new cells added";
+			  }
+			  else if (c.equals("u") || c.equals("undo")){
+				  board.undoSet();
+				  turn = (turn + players.size() - 1) % players.size();
+				  return turn();
+			  }
+			  else if (c.equals("r") || c.equals("redo")){
+				  if (won())
+					  return "error Game is over";
+				  board.redoSet();
+				  turn = (turn+1) % players.size();
+				  return turn();
+			  }
+			  else if (c.equals("l") || c.equals("longest"))
+				  return "ok "+SequenceView.of(board);
+			  return "error Unknown command '"+c+"'";
+		  }
+		  catch (NumberFormatException | ArrayIndexOutOfBoundsException e){
+			  return "error Bad input";
+		  }
+		  catch (RuntimeException e){
+			  return "error "+e.getMessage();
+		  }
+	  }
+  }
+
+}
@@ -0,0 +1,427 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+// An ExpandableBoard that logs every change made through it to a
+// MoveJournal so that a game survives the JVM dying.  Each set(),
+// setAll(), undoSet(), redoSet(), expansion and change of the fill
+// element is written as fixed-size records; elements are written as
+// symbols with toString() and read back with a parse function.
+//
+// The journal holds the changes made since the board was first
+// wrapped, so open() must be given a board in the same state each
+// time, usually a new one.  Replaying a journal into a BatchBoard
+// works out which steps are applied and which can be redone and puts
+// them on the board with one setAll() per step, leaving out steps that
+// were undone and replaced, then rewrites the journal to match.  Each
+// step stays a step for undoSet() and redoSet(), as it was before the
+// journal was reopened.  Other boards, and journals that change the
+// fill element, are replayed one record at a time.
+//
+// Target Space Complexity: O(S)
+//  S: number of distinct symbols
+public class JournaledBoard<T> implements BatchBoard<T>, SequenceBoard<T>{
+
+	private ExpandableBoard<T> board;
+	private MoveJournal journal;
+	//Symbol ids given so far and how many there are
+	private HashMap<T,Integer> ids = new HashMap<T,Integer>();
+	private int symbols = 0;
+
+  private JournaledBoard(ExpandableBoard<T> board, MoveJournal journal){
+	  this.board = board;
+	  this.journal = journal;
+  }
+
+  // Open the journal at path for board, replaying the changes already
+  // in it onto board. A new journal starts from board as it is now.
+  // Changes are forced to the disk in groups of groupSize or after
+  // maxDelayMillis, as described in MoveJournal.  A journal that was
+  // not made for a board with the same fill element, or whose changes
+  // cannot be made on board, raises a RuntimeException with the
+  // message "Bad move journal".
+  //
+  // Target Complexity: O(J + M*K)
+  //  J: number of records in the journal
+  //  M: number of moves on the board when it was saved
+  //  K: length of the runs through each element
+  public static <T> JournaledBoard<T> open(ExpandableBoard<T> board, Path path,
+		  Function<String,T> parse, int groupSize, long maxDelayMillis) throws IOException{
+	  MoveJournal journal = new MoveJournal(path, groupSize, maxDelayMillis);
+	  List<MoveJournal.Entry> entries = journal.entries();
+	  JournaledBoard<T> b = new JournaledBoard<T>(board, journal);
+	  if (entries.isEmpty()){
+		  b.symbol(board.getFillElem());
+		  b.endOperation();
+		  return b;
+	  }
+	  Replay<T> replay;
+	  try{
+		  replay = new Replay<T>(entries, parse);
+		  if (!replay.palette.get(0).equals(board.getFillElem()))
+			  throw new RuntimeException("Bad move journal");
+		  if (replay.fills||!(board instanceof BatchBoard)){
+			  replay.applyRecords(board);
+			  b.ids = replay.ids;
+			  b.symbols = replay.palette.size();
+			  return b;
+		  }
+		  replay.applyMoves((BatchBoard<T>) board);
+	  }
+	  catch (RuntimeException e){
+		  journal.close();
+		  throw new RuntimeException("Bad move journal");
+	  }
+	  journal.close();
+	  //write what is now on the board to a new journal and swap it in
+	  Path rewrite = path.resolveSibling(path.getFileName()+".rewrite");
+	  Files.deleteIfExists(rewrite);
+	  b = new JournaledBoard<T>(board, new MoveJournal(rewrite, Integer.MAX_VALUE, 0));
+	  b.symbol(board.getFillElem());
+	  replay.write(b);
+	  b.close();
+	  Files.move(rewrite, path, StandardCopyOption.ATOMIC_MOVE,
+			  StandardCopyOption.REPLACE_EXISTING);
+	  JournaledBoard<T> rewritten = b;
+	  b = new JournaledBoard<T>(board, new MoveJournal(path, groupSize, maxDelayMillis));
+	  b.ids = rewritten.ids;
+	  b.symbols = rewritten.symbols;
+	  return b;
+  }
+
+  // Moves read back from a journal along with the undo/redo steps they
+  // make up.
+  private static class Replay<T>{
+	  List<MoveJournal.Entry> entries;
+	  List<T> palette = new ArrayList<T>();
+	  HashMap<T,Integer> ids = new HashMap<T,Integer>();
+	  //Steps of moves in the order they were made; the first applied of
+	  //them are on the board and the rest can be redone
+	  List<List<RowColElem<T>>> steps = new ArrayList<List<RowColElem<T>>>();
+	  int applied = 0;
+	  //Bounding box of the moves and expansions
+	  boolean expanded = false;
+	  int minRow, maxRow, minCol, maxCol;
+	  //Whether the fill element changes
+	  boolean fills = false;
+
+	  Replay(List<MoveJournal.Entry> entries, Function<String,T> parse){
+		  this.entries = entries;
+		  List<RowColElem<T>> batch = null;
+		  int remaining = 0;
+		  for (MoveJournal.Entry e : entries){
+			  if ((remaining > 0)&&(e.op != MoveJournal.SET)&&(e.op != MoveJournal.SYMBOL))
+				  throw new RuntimeException("Bad move journal");
+			  switch (e.op){
+			  case MoveJournal.SYMBOL:
+				  if (e.id != palette.size())
+					  throw new RuntimeException("Bad move journal");
+				  T x = parse.apply(e.text);
+				  palette.add(x);
+				  ids.put(x, e.id);
+				  break;
+			  case MoveJournal.SET:
+				  include(e.row, e.col);
+				  if (remaining == 0)
+					  batch = newStep();
+				  else
+					  remaining--;
+				  batch.add(new RowColElem<T>(e.row, e.col, symbol(e.id)));
+				  break;
+			  case MoveJournal.BATCH:
+				  if (e.row <= 0)
+					  throw new RuntimeException("Bad move journal");
+				  batch = newStep();
+				  remaining = e.row;
+				  break;
+			  case MoveJournal.UNDO:
+				  if (applied == 0)
+					  throw new RuntimeException("Bad move journal");
+				  applied--;
+				  break;
+			  case MoveJournal.REDO:
+				  if (applied == steps.size())
+					  throw new RuntimeException("Bad move journal");
+				  applied++;
+				  break;
+			  case MoveJournal.EXPAND:
+				  include(e.row, e.col);
+				  break;
+			  case MoveJournal.FILL:
+				  symbol(e.id);
+				  fills = true;
+				  break;
+			  default:
+				  throw new RuntimeException("Bad move journal");
+			  }
+		  }
+		  if (palette.isEmpty()||(remaining > 0))
+			  throw new RuntimeException("Bad move journal");
+	  }
+
+	  // Start a step after the applied ones, dropping those undone
+	  List<RowColElem<T>> newStep(){
+		  steps.subList(applied, steps.size()).clear();
+		  List<RowColElem<T>> step = new ArrayList<RowColElem<T>>();
+		  steps.add(step);
+		  applied++;
+		  return step;
+	  }
+
+	  T symbol(int id){
+		  if (id >= palette.size())
+			  throw new RuntimeException("Bad move journal");
+		  return palette.get(id);
+	  }
+
+	  void include(int row, int col){
+		  if (!expanded){
+			  minRow = maxRow = row;
+			  minCol = maxCol = col;
+			  expanded = true;
+		  }
+		  minRow = Math.min(minRow,row);
+		  maxRow = Math.max(maxRow,row);
+		  minCol = Math.min(minCol,col);
+		  maxCol = Math.max(maxCol,col);
+	  }
+
+	  // Make every change in the journal on board in order
+	  void applyRecords(ExpandableBoard<T> board){
+		  List<RowColElem<T>> batch = new ArrayList<RowColElem<T>>();
+		  int remaining = 0;
+		  for (MoveJournal.Entry e : entries){
+			  switch (e.op){
+			  case MoveJournal.SET:
+				  T x = palette.get(e.id);
+				  if (remaining == 0){
+					  board.set(e.row, e.col, x);
+					  break;
+				  }
+				  batch.add(new RowColElem<T>(e.row, e.col, x));
+				  if (--remaining == 0){
+					  ((BatchBoard<T>) board).setAll(batch);
+					  batch.clear();
+				  }
+				  break;
+			  case MoveJournal.BATCH:
+				  remaining = e.row;
+				  break;
+			  case MoveJournal.UNDO:
+				  board.undoSet();
+				  break;
+			  case MoveJournal.REDO:
+				  board.redoSet();
+				  break;
+			  case MoveJournal.EXPAND:
+				  ((BatchBoard<T>) board).expandToInclude(e.row, e.col);
+				  break;
+			  case MoveJournal.FILL:
+				  board.setFillElem(palette.get(e.id));
+				  break;
+			  }
+		  }
+	  }
+
+	  // Put the moves on board a step at a time after expanding it once,
+	  // then undo the steps that can be redone.
+	  void applyMoves(BatchBoard<T> board){
+		  if (expanded){
+			  board.expandToInclude(minRow, minCol);
+			  board.expandToInclude(maxRow, maxCol);
+		  }
+		  for (List<RowColElem<T>> step : steps){
+			  board.setAll(step);
+		  }
+		  for (int s=applied; s<steps.size(); s++){
+			  board.undoSet();
+		  }
+	  }
+
+	  // Journal the changes applyMoves() made
+	  void write(JournaledBoard<T> b) throws IOException{
+		  if (expanded){
+			  b.log(MoveJournal.EXPAND, 0, minRow, minCol);
+			  b.log(MoveJournal.EXPAND, 0, maxRow, maxCol);
+		  }
+		  for (List<RowColElem<T>> step : steps){
+			  b.logStep(step);
+		  }
+		  for (int s=applied; s<steps.size(); s++){
+			  b.log(MoveJournal.UNDO, 0, 0, 0);
+		  }
+	  }
+  }
+
+  // Id of the symbol x, journaling it if it is new
+  private int symbol(T x){
+	  Integer id = ids.get(x);
+	  if (id == null){
+		  id = symbols++;
+		  journal.appendSymbol(id, x.toString());
+		  ids.put(x, id);
+	  }
+	  return id;
+  }
+
+  // Journal a single record operation
+  private void log(int op, int id, int row, int col) throws IOException{
+	  journal.append(op, id, row, col);
+	  journal.endOperation();
+  }
+
+  // Journal moves as one step
+  private void logStep(List<RowColElem<T>> moves) throws IOException{
+	  if (moves.size() == 1){
+		  RowColElem<T> e = moves.get(0);
+		  log(MoveJournal.SET, symbol(e.getElem()), e.getRow(), e.getCol());
+		  return;
+	  }
+	  for (RowColElem<T> e : moves){
+		  symbol(e.getElem());
+	  }
+	  journal.append(MoveJournal.BATCH, 0, moves.size(), 0);
+	  for (RowColElem<T> e : moves){
+		  journal.append(MoveJournal.SET, symbol(e.getElem()), e.getRow(), e.getCol());
+	  }
+	  journal.endOperation();
+  }
+
+  private void endOperation(){
+	  try{
+		  journal.endOperation();
+	  }
+	  catch (IOException e){
+		  throw new RuntimeException(e);
+	  }
+  }
+
+  // The wrapped board
+  public ExpandableBoard<T> getBoard(){
+	  return board;
+  }
+
+  public int getMinRow(){
+	  return board.getMinRow();
+  }
+  public int getMaxRow(){
+	  return board.getMaxRow();
+  }
+  public int getMinCol(){
+	  return board.getMinCol();
+  }
+  public int getMaxCol(){
+	  return board.getMaxCol();
+  }
+
+  public T getFillElem(){
+	  return board.getFillElem();
+  }
+
+  // Change the fill element of the board and journal it
+  public void setFillElem(T f){
+	  board.setFillElem(f);
+	  journal.append(MoveJournal.FILL, symbol(f), 0, 0);
+	  endOperation();
+  }
+
+  public T get(int row, int col){
+	  return board.get(row, col);
+  }
+
+  // Expand the board and journal the expansion if the extent grew.
+  // The board must be a BatchBoard; otherwise a RuntimeException with
+  // the message "Board cannot expand" is raised.
+  public int expandToInclude(int row, int col){
+	  if (!(board instanceof BatchBoard))
+		  throw new RuntimeException("Board cannot expand");
+	  int r0 = board.getMinRow(), r1 = board.getMaxRow();
+	  int c0 = board.getMinCol(), c1 = board.getMaxCol();
+	  int n = ((BatchBoard<T>) board).expandToInclude(row, col);
+	  if ((r0 != board.getMinRow())||(r1 != board.getMaxRow())
+			  ||(c0 != board.getMinCol())||(c1 != board.getMaxCol())){
+		  journal.append(MoveJournal.EXPAND, 0, row, col);
+		  endOperation();
+	  }
+	  return n;
+  }
+
+  // Set row/col on the board and journal the move. Sets of the fill
+  // element, which do not change the board, are not journaled.
+  public void set(int row, int col, T x){
+	  board.set(row, col, x);
+	  if (x.equals(board.getFillElem()))
+		  return;
+	  journal.append(MoveJournal.SET, symbol(x), row, col);
+	  endOperation();
+  }
+
+  // Set cells on the board as one step and journal it. The board must
+  // be a BatchBoard; otherwise a RuntimeException with the message
+  // "Board cannot set a batch" is raised.
+  public void setAll(Collection<RowColElem<T>> cells){
+	  if (!(board instanceof BatchBoard))
+		  throw new RuntimeException("Board cannot set a batch");
+	  ((BatchBoard<T>) board).setAll(cells);
+	  List<RowColElem<T>> moves = new ArrayList<RowColElem<T>>();
+	  for (RowColElem<T> e : cells){
+		  if (!e.getElem().equals(board.getFillElem()))
+			  moves.add(e);
+	  }
+	  if (moves.isEmpty())
+		  return;
+	  try{
+		  logStep(moves);
+	  }
+	  catch (IOException e){
+		  throw new RuntimeException(e);
+	  }
+  }
+
+  public List<RowColElem<T>> getLongestSequence(){
+	  return board.getLongestSequence();
+  }
+
+  public SequenceView<T> getLongestView(){
+	  return SequenceView.of(board);
+  }
+
+  public void undoSet(){
+	  board.undoSet();
+	  journal.append(MoveJournal.UNDO, 0, 0, 0);
+	  endOperation();
+  }
+
+  public void redoSet(){
+	  board.redoSet();
+	  journal.append(MoveJournal.REDO, 0, 0, 0);
+	  endOperation();
+  }
+
+  // Number of changes not yet written and forced to the disk
+  public int getPendingChanges(){
+	  return journal.getPendingOps();
+  }
+
+  // Write and force any changes not yet on the disk
+  public void sync() throws IOException{
+	  journal.sync();
+  }
+
+  // Sync and close the journal. The board can still be read but
+  // further changes raise a RuntimeException with the message "Move
+  // journal is closed" after being made.
+  public void close() throws IOException{
+	  journal.close();
+  }
+
+  public String toString(){
+	  return board.toString();
+  }
+
+}
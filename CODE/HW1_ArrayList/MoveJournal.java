@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.CRC32C;
+// An append-only file of fixed-size records, used by JournaledBoard to
+// log the changes made to a board.
+//
+// Every record is RECORD_SIZE bytes: an op byte, a spare byte, an
+// unsigned short symbol id, an int row and an int col, then a CRC32C
+// of those 12 bytes and of the record's position in the file.  The
+// first record is a HEADER holding MAGIC and VERSION.  A SYMBOL record
+// gives a symbol its id; its row is the length of the symbol in UTF-8
+// bytes, which fill the 12 data bytes of as many raw records as needed
+// right after it.  A BATCH record has the number of SET records that
+// follow it and make up one step as its row.
+//
+// Records are appended to a buffer in memory and written and forced to
+// the disk in groups: once groupSize operations are pending or
+// maxDelayMillis after the oldest of them, whichever comes first.  A
+// groupSize of 1 forces every operation before the call making it
+// returns; larger groups and delays trade the last few operations lost
+// in a crash for fewer forces.
+//
+// When a journal is opened the records are checked in order.  A crash
+// can leave a partly written record, a record that was never written
+// or a BATCH short of its SET records at the end of the file; the file
+// is truncated before the first of these.  A file whose first record
+// is not a header raises a RuntimeException with the message "Bad move
+// journal" and is left alone.
+public class MoveJournal{
+
+	public static final int RECORD_SIZE = 16;
+	public static final int MAGIC = 0x474A4E31;
+	public static final int VERSION = 1;
+	//Record ops
+	public static final int HEADER = 1, SYMBOL = 2, SET = 3, BATCH = 4,
+			UNDO = 5, REDO = 6, EXPAND = 7, FILL = 8;
+	//Most symbol ids that fit in a record
+	public static final int MAX_SYMBOLS = 1 << 16;
+	//Data bytes in each record
+	private static final int DATA_SIZE = 12;
+
+	//Forces the journals whose delay has run out
+	private static final Timer TIMER = new Timer("MoveJournal", true);
+
+	// A record read back from the file. Symbols come with their text.
+	public static class Entry{
+		public int op, id, row, col;
+		public String text;
+	}
+
+	private FileChannel channel;
+	private final int groupSize;
+	private final long maxDelayMillis;
+	//Records already in the file when it was opened, header excluded
+	private List<Entry> entries = new ArrayList<Entry>();
+	//Number of records written or pending; the position of the next one
+	private long count;
+	//Records not yet written
+	private ByteBuffer pending = ByteBuffer.allocate(64*RECORD_SIZE);
+	private int pendingOps = 0;
+	private TimerTask delay;
+	//Failure of a write made by the timer, raised by the next call
+	private IOException failure;
+	private CRC32C crc = new CRC32C();
+
+  // Open the journal at path, creating it if it does not exist, and
+  // read the records already in it. Operations are forced to the disk
+  // in groups of groupSize or after maxDelayMillis; a delay of 0 or
+  // less waits for the group to fill or for sync().
+  public MoveJournal(Path path, int groupSize, long maxDelayMillis) throws IOException{
+	  if (groupSize <= 0)
+		  throw new RuntimeException("Group size must be positive");
+	  this.groupSize = groupSize;
+	  this.maxDelayMillis = maxDelayMillis;
+	  channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+			  StandardOpenOption.CREATE);
+	  try{
+		  long valid = readEntries();
+		  if (valid < channel.size())
+			  channel.truncate(valid);
+		  channel.position(valid);
+		  if (count == 0){
+			  append(HEADER, 0, MAGIC, VERSION);
+			  sync();
+		  }
+	  }
+	  catch (IOException | RuntimeException e){
+		  channel.close();
+		  throw e;
+	  }
+  }
+
+  // Records read when the journal was opened, in order, without the
+  // header and with the text of each SYMBOL joined to it
+  public List<Entry> entries(){
+	  return entries;
+  }
+
+  // Read the records from the start of the file into entries and
+  // return the length of the part of the file that holds whole ones.
+  private long readEntries() throws IOException{
+	  long records = channel.size()/RECORD_SIZE;
+	  ByteBuffer in = ByteBuffer.allocate((int) (records*RECORD_SIZE));
+	  while (in.hasRemaining()){
+		  if (channel.read(in, in.position()) < 0)
+			  break;
+	  }
+	  in.flip();
+	  //records and entries up to the last one that ended a whole operation
+	  long whole = 0;
+	  int wholeEntries = 0;
+	  int batch = 0;
+	  for (count=0; count<records; ){
+		  Entry e = readRecord(in);
+		  if ((e == null)&&(count == 0))
+			  throw new RuntimeException("Bad move journal");
+		  if (e == null)
+			  break;
+		  if (count == 1){
+			  if ((e.op != HEADER)||(e.row != MAGIC)||(e.col != VERSION))
+				  throw new RuntimeException("Bad move journal");
+			  whole = count;
+			  continue;
+		  }
+		  if (e.op == SYMBOL){
+			  if ((e.row < 0)||(e.row > (records-count)*DATA_SIZE))
+				  break;
+			  byte[] text = new byte[e.row];
+			  for (int k=0; k<text.length; k+=DATA_SIZE){
+				  if ((count == records)||!checked(in, count)){
+					  e = null;
+					  break;
+				  }
+				  in.get(text, k, Math.min(DATA_SIZE, text.length-k));
+				  in.position((int) (++count*RECORD_SIZE));
+			  }
+			  if (e == null)
+				  break;
+			  e.text = new String(text, StandardCharsets.UTF_8);
+		  }
+		  else if (e.op == BATCH)
+			  batch = e.row;
+		  else if ((e.op == SET)&&(batch > 0))
+			  batch--;
+		  entries.add(e);
+		  if (batch == 0){
+			  whole = count;
+			  wholeEntries = entries.size();
+		  }
+	  }
+	  count = whole;
+	  entries = new ArrayList<Entry>(entries.subList(0, wholeEntries));
+	  return whole*RECORD_SIZE;
+  }
+
+  // Read the record at the position of in, or return null if it fails
+  // its check.
+  private Entry readRecord(ByteBuffer in){
+	  if (!checked(in, count))
+		  return null;
+	  Entry e = new Entry();
+	  e.op = in.get();
+	  in.get();
+	  e.id = in.getShort() & 0xFFFF;
+	  e.row = in.getInt();
+	  e.col = in.getInt();
+	  in.getInt();
+	  count++;
+	  return e;
+  }
+
+  // True if the record at the position of in matches its check
+  private boolean checked(ByteBuffer in, long index){
+	  int start = in.position();
+	  ByteBuffer data = in.duplicate();
+	  data.limit(start+DATA_SIZE);
+	  return in.getInt(start+DATA_SIZE) == check(data, index);
+  }
+
+  private int check(ByteBuffer data, long index){
+	  crc.reset();
+	  crc.update(data);
+	  ByteBuffer position = ByteBuffer.allocate(8);
+	  position.putLong(index).flip();
+	  crc.update(position);
+	  return (int) crc.getValue();
+  }
+
+  // Add a record to the pending ones
+  public synchronized void append(int op, int id, int row, int col){
+	  ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+	  record.put((byte) op).put((byte) 0).putShort((short) id).putInt(row).putInt(col);
+	  addRecord(record);
+  }
+
+  // Add a SYMBOL record giving text the symbol id
+  public synchronized void appendSymbol(int id, String text){
+	  if ((id < 0)||(id >= MAX_SYMBOLS))
+		  throw new RuntimeException("Too many symbols for journal");
+	  byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+	  append(SYMBOL, id, bytes.length, 0);
+	  for (int k=0; k<bytes.length; k+=DATA_SIZE){
+		  ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		  record.put(bytes, k, Math.min(DATA_SIZE, bytes.length-k));
+		  addRecord(record);
+	  }
+  }
+
+  // Seal the record's check and copy it to the pending ones
+  private void addRecord(ByteBuffer record){
+	  if (!channel.isOpen())
+		  throw new RuntimeException("Move journal is closed");
+	  record.position(0).limit(DATA_SIZE);
+	  int check = check(record, count++);
+	  record.limit(RECORD_SIZE);
+	  record.putInt(DATA_SIZE, check);
+	  record.position(0);
+	  if (pending.remaining() < RECORD_SIZE){
+		  ByteBuffer bigger = ByteBuffer.allocate(2*pending.capacity());
+		  pending.flip();
+		  bigger.put(pending);
+		  pending = bigger;
+	  }
+	  pending.put(record);
+  }
+
+  // Mark the end of an operation made of the records appended since the
+  // last one, writing and forcing the group once it is full.
+  // A write made by the timer that failed is raised here, with the
+  // operation still pending.
+  public synchronized void endOperation() throws IOException{
+	  pendingOps++;
+	  raiseFailure();
+	  if (pendingOps >= groupSize)
+		  sync();
+	  else if ((delay == null)&&(maxDelayMillis > 0)){
+		  delay = new TimerTask(){
+			  public void run(){
+				  syncLater(this);
+			  }
+		  };
+		  TIMER.schedule(delay, maxDelayMillis);
+	  }
+  }
+
+  // Sync for the timer task, keeping a failure for the next call to
+  // raise
+  private synchronized void syncLater(TimerTask task){
+	  if (delay != task)
+		  return;
+	  try{
+		  sync();
+	  }
+	  catch (IOException e){
+		  failure = e;
+	  }
+  }
+
+  // Raise the failure of the last write made by the timer, once
+  private void raiseFailure() throws IOException{
+	  IOException e = failure;
+	  failure = null;
+	  if (e != null)
+		  throw e;
+  }
+
+  // Write the pending records and force them to the disk. If the write
+  // fails the records stay pending and the file is put back where they
+  // start, so the next sync() writes them again.  A write made by the
+  // timer that failed is raised here first.
+  public synchronized void sync() throws IOException{
+	  if (delay != null){
+		  delay.cancel();
+		  delay = null;
+	  }
+	  if (!channel.isOpen())
+		  return;
+	  raiseFailure();
+	  long start = channel.position();
+	  ByteBuffer out = pending.duplicate();
+	  out.flip();
+	  try{
+		  while (out.hasRemaining()){
+			  channel.write(out);
+		  }
+		  channel.force(false);
+	  }
+	  catch (IOException e){
+		  try{
+			  channel.position(start);
+		  }
+		  catch (IOException p){
+			  e.addSuppressed(p);
+		  }
+		  throw e;
+	  }
+	  pending.clear();
+	  pendingOps = 0;
+  }
+
+  // Number of operations not yet written and forced to the disk
+  public synchronized int getPendingOps(){
+	  return pendingOps;
+  }
+
+  // Sync and close the file
+  public synchronized void close() throws IOException{
+	  if (!channel.isOpen())
+		  return;
+	  try{
+		  sync();
+	  }
+	  finally{
+		  channel.close();
+	  }
+  }
+
+}
@@ -0,0 +1,464 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Base of the ExpandableBoards that keep their cells in a flat array of
+// primitives rather than as object references: IntBoard over an int[]
+// and CharBoard over a char[].  Every element is handled as an int
+// code, the value itself widened to int, so get, set and the runs
+// checked for the longest sequence compare ints and allocate nothing.
+// One code is reserved to mark empty cells and cannot be set.
+//
+// The storage is row-major with room to spare around the extent, so
+// the board grows in any direction without copying every time.  The
+// longest sequence and the undo/redo history are kept as ints too; the
+// longest sequence can be read through getLongestLength(),
+// getLongestRow() and the other primitive accessors without building
+// a list.
+//
+// Subclasses supply the array and the conversions between elements
+// and codes.
+//
+// Space Complexity: O(R * C + M)
+//   R: number of rows
+//   C: number of columns
+//   M: number of sets in the history
+public abstract class PrimitiveBoard<T> implements SequenceBoard<T>{
+
+	//Extent of the board
+	private int minRow, maxRow, minCol, maxCol;
+	//Virtual row/col of the first cell of the storage and its size
+	private int baseRow, baseCol, capRows, capCols;
+	//Code of empty cells and of the fill element
+	private final int emptyCode;
+	private int fillCode;
+	//Longest sequence: first cell, index into DIRECTIONS, length and code
+	private int longestRow, longestCol, longestDir, longestLength, longestCode;
+	//View of the longest sequence, null until asked for after a change
+	private SequenceView<T> longestView = null;
+	//History of sets, MOVE ints per move: row, col, code, then the
+	//longest sequence before the move. The first undone entries past
+	//moves can be redone.
+	private int[] history = new int[16*MOVE];
+	private int moves = 0, redoable = 0;
+	private static final int MOVE = 8;
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
+
+  // Create a board with the extent given, every cell holding
+  // emptyCode, and fillCode as the fill element. allocate() is called
+  // from here, so subclasses must not initialize their array field.
+  protected PrimitiveBoard(int minRow, int maxRow, int minCol, int maxCol,
+		  int fillCode, int emptyCode){
+	  if (minRow > maxRow || minCol > maxCol)
+		  throw new RuntimeException("Empty extent");
+	  this.emptyCode = emptyCode;
+	  checkCode(fillCode);
+	  this.fillCode = fillCode;
+	  this.minRow = baseRow = minRow;
+	  this.maxRow = maxRow;
+	  this.minCol = baseCol = minCol;
+	  this.maxCol = maxCol;
+	  capRows = maxRow-minRow+1;
+	  capCols = maxCol-minCol+1;
+	  allocate(Math.multiplyExact(capRows, capCols));
+	  longestCode = emptyCode;
+  }
+
+  // Replace the storage with an array of n cells, all empty
+  protected abstract void allocate(int n);
+
+  // The storage array, for copying it when the board grows
+  protected abstract Object grid();
+
+  // Code held at index of the storage
+  protected abstract int code(int index);
+
+  // Store code at index of the storage
+  protected abstract void store(int index, int code);
+
+  // The element for code and the code for x
+  protected abstract T box(int code);
+
+  protected abstract int unbox(T x);
+
+  // Access the extent of the board
+  public int getMinRow(){
+	  return minRow;
+  }
+
+  public int getMaxRow(){
+	  return maxRow;
+  }
+
+  public int getMinCol(){
+	  return minCol;
+  }
+
+  public int getMaxCol(){
+	  return maxCol;
+  }
+
+  public T getFillElem(){
+	  return box(fillCode);
+  }
+
+  // Change the fill element. Cells already set keep their elements.
+  public void setFillElem(T f){
+	  if (f == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  setFillCode(unbox(f));
+  }
+
+  protected int getFillCode(){
+	  return fillCode;
+  }
+
+  protected void setFillCode(int code){
+	  checkCode(code);
+	  fillCode = code;
+  }
+
+  private void checkCode(int code){
+	  if (code == emptyCode)
+		  throw new RuntimeException("Value "+box(code)+" is reserved for empty cells");
+  }
+
+  // Index in the storage of row/col, which must be within the extent.
+  // Each row of the extent is contiguous in the storage.
+  protected int index(int row, int col){
+	  return (row-baseRow)*capCols + (col-baseCol);
+  }
+
+  private boolean inExtent(int row, int col){
+	  return (row>=minRow)&&(row<=maxRow)&&(col>=minCol)&&(col<=maxCol);
+  }
+
+  public T get(int row, int col){
+	  return box(getCode(row,col));
+  }
+
+  // Code of the element at row/col, the fill code for empty cells and
+  // cells outside the extent.
+  //
+  // Complexity: O(1)
+  protected int getCode(int row, int col){
+	  if (!inExtent(row,col))
+		  return fillCode;
+	  int code = code(index(row,col));
+	  return (code == emptyCode) ? fillCode : code;
+  }
+
+  public void set(int row, int col, T x){
+	  if (x == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  setCode(row, col, unbox(x));
+  }
+
+  // Set row/col to code with the same rules as set(): setting the fill
+  // code has no effect, setting a cell twice raises "Element 4 -2
+  // already set to XX" and the reserved empty code cannot be set.
+  //
+  // Target Complexity: O(K) (amortized, plus any expansion)
+  //   K: length of the runs through row/col
+  protected void setCode(int row, int col, int code){
+	  if (code == fillCode)
+		  return;
+	  checkCode(code);
+	  if (inExtent(row,col)){
+		  int old = code(index(row,col));
+		  if (old != emptyCode){
+			  throw new RuntimeException(String.format("Element %d %d already set to ",
+					  row, col)+box(old));
+		  }
+	  }
+	  else
+		  expandToInclude(row,col);
+	  store(index(row,col), code);
+	  pushMove(row, col, code);
+	  trackLongest(row, col, code);
+  }
+
+  // Expand the extent to include row/col and return the number of cells
+  // added to it. Storage is only reallocated once the extent outgrows
+  // it, at least doubling in the direction of growth, so a run of
+  // expansions the same way is amortized O(R) or O(C) each.
+  //
+  // Target Complexity: O(R*C) (worst case)
+  public int expandToInclude(int row, int col){
+	  if (inExtent(row,col))
+		  return 0;
+	  int oldCells = (maxRow-minRow+1)*(maxCol-minCol+1);
+	  int newMinRow = Math.min(minRow,row), newMaxRow = Math.max(maxRow,row);
+	  int newMinCol = Math.min(minCol,col), newMaxCol = Math.max(maxCol,col);
+	  if (newMinRow < baseRow || newMaxRow >= baseRow+capRows
+			  || newMinCol < baseCol || newMaxCol >= baseCol+capCols){
+		  int newCapRows = capRows, newBaseRow = baseRow;
+		  if (newMinRow < baseRow || newMaxRow >= baseRow+capRows){
+			  int need = newMaxRow-newMinRow+1;
+			  newCapRows = Math.max(need, 2*capRows);
+			  //the spare rows go on the side that grew
+			  newBaseRow = (row < minRow) ? newMaxRow-newCapRows+1 : newMinRow;
+		  }
+		  int newCapCols = capCols, newBaseCol = baseCol;
+		  if (newMinCol < baseCol || newMaxCol >= baseCol+capCols){
+			  int need = newMaxCol-newMinCol+1;
+			  newCapCols = Math.max(need, 2*capCols);
+			  newBaseCol = (col < minCol) ? newMaxCol-newCapCols+1 : newMinCol;
+		  }
+		  Object old = grid();
+		  int oldBaseRow = baseRow, oldBaseCol = baseCol, oldCapCols = capCols;
+		  allocate(Math.multiplyExact(newCapRows, newCapCols));
+		  baseRow = newBaseRow;
+		  baseCol = newBaseCol;
+		  capRows = newCapRows;
+		  capCols = newCapCols;
+		  int width = maxCol-minCol+1;
+		  for (int i=minRow; i<=maxRow; i++){
+			  System.arraycopy(old, (i-oldBaseRow)*oldCapCols + (minCol-oldBaseCol),
+					  grid(), index(i,minCol), width);
+		  }
+	  }
+	  minRow = newMinRow;
+	  maxRow = newMaxRow;
+	  minCol = newMinCol;
+	  maxCol = newMaxCol;
+	  return (maxRow-minRow+1)*(maxCol-minCol+1) - oldCells;
+  }
+
+  // Record a set of row/col to code with the longest sequence before
+  // it, cancelling any redo
+  private void pushMove(int row, int col, int code){
+	  if ((moves+1)*MOVE > history.length)
+		  history = Arrays.copyOf(history, 2*history.length);
+	  int h = moves*MOVE;
+	  history[h] = row;
+	  history[h+1] = col;
+	  history[h+2] = code;
+	  history[h+3] = longestRow;
+	  history[h+4] = longestCol;
+	  history[h+5] = longestDir;
+	  history[h+6] = longestLength;
+	  history[h+7] = longestCode;
+	  moves++;
+	  redoable = 0;
+  }
+
+  // Check the four lines through row/col after code was placed there.
+  // A run strictly longer than the longest sequence replaces it, so ties
+  // keep the earliest sequence.
+  //
+  // Target Complexity: O(K)
+  private void trackLongest(int row, int col, int code){
+	  for (int d=0; d<DIRECTIONS.length; d++){
+		  int dRow = DIRECTIONS[d][0], dCol = DIRECTIONS[d][1];
+		  int back = countRun(row, col, -dRow, -dCol, code);
+		  int length = back + 1 + countRun(row, col, dRow, dCol, code);
+		  if (length > longestLength){
+			  longestView = null;
+			  longestRow = row-back*dRow;
+			  longestCol = col-back*dCol;
+			  longestDir = d;
+			  longestLength = length;
+			  longestCode = code;
+		  }
+	  }
+  }
+
+  // Count the cells past row/col in direction dRow/dCol holding code,
+  // stopping at the edge of the extent
+  private int countRun(int row, int col, int dRow, int dCol, int code){
+	  int count = 0;
+	  int i = row+dRow, j = col+dCol;
+	  int step = dRow*capCols + dCol, at = index(row,col) + step;
+	  while ((i>=minRow)&&(i<=maxRow)&&(j>=minCol)&&(j<=maxCol)&&(code(at) == code)){
+		  count++;
+		  i += dRow;
+		  j += dCol;
+		  at += step;
+	  }
+	  return count;
+  }
+
+  // Whether row/col is inside the extent and holds code, that is
+  // whether a run of code reaching row/col carries on there
+  private boolean continuesRun(int row, int col, int code){
+	  return (row>=minRow)&&(row<=maxRow)&&(col>=minCol)&&(col<=maxCol)
+		  &&(code(index(row,col)) == code);
+  }
+
+  // Search the whole board for its longest sequence, for boards filled
+  // without going through set(). A run is only followed from its first
+  // cell, found by checking the one cell before it, so each cell is
+  // counted once per direction.
+  //
+  // Target Complexity: O(R*C)
+  protected void rescanLongest(){
+	  longestView = null;
+	  longestLength = 0;
+	  longestCode = emptyCode;
+	  for (int i=minRow; i<=maxRow; i++){
+		  for (int j=minCol; j<=maxCol; j++){
+			  int code = code(index(i,j));
+			  if (code == emptyCode)
+				  continue;
+			  for (int d=0; d<DIRECTIONS.length; d++){
+				  int dRow = DIRECTIONS[d][0], dCol = DIRECTIONS[d][1];
+				  if (continuesRun(i-dRow, j-dCol, code))
+					  continue;
+				  int length = 1 + countRun(i, j, dRow, dCol, code);
+				  if (length > longestLength){
+					  longestRow = i;
+					  longestCol = j;
+					  longestDir = d;
+					  longestLength = length;
+					  longestCode = code;
+				  }
+			  }
+		  }
+	  }
+  }
+
+  // Make the run of length cells starting at row/col in direction dir,
+  // an index into horizontal, vertical, diagonal and reverse diagonal,
+  // the longest sequence. For subclasses with their own search.
+  protected void setLongest(int row, int col, int dir, int length, int code){
+	  longestView = null;
+	  longestRow = row;
+	  longestCol = col;
+	  longestDir = dir;
+	  longestLength = length;
+	  longestCode = (length == 0) ? emptyCode : code;
+  }
+
+  // Store code at row/col, which must be in the extent, without
+  // recording it in the history. For filling a new board.
+  protected void storeInitial(int row, int col, int code){
+	  if (code != fillCode){
+		  checkCode(code);
+		  store(index(row,col), code);
+	  }
+  }
+
+  // The longest sequence without building a list: its length, 0 on a
+  // board with nothing set, its first cell, the row/col step from one
+  // cell of it to the next and the code of its element.
+  //
+  // Target Complexity: O(1)
+  public int getLongestLength(){
+	  return longestLength;
+  }
+
+  public int getLongestRow(){
+	  return longestRow;
+  }
+
+  public int getLongestCol(){
+	  return longestCol;
+  }
+
+  public int getLongestRowStep(){
+	  return DIRECTIONS[longestDir][0];
+  }
+
+  public int getLongestColStep(){
+	  return DIRECTIONS[longestDir][1];
+  }
+
+  protected int getLongestCode(){
+	  return longestCode;
+  }
+
+  // The longest sequence as a SequenceView, made once per change of
+  // the longest sequence
+  //
+  // Target Complexity: O(1)
+  public SequenceView<T> getLongestView(){
+	  if (longestView == null){
+		  longestView = new SequenceView<T>(longestRow, longestCol, getLongestRowStep(),
+				  getLongestColStep(), longestLength,
+				  (longestLength == 0) ? null : box(longestCode));
+	  }
+	  return longestView;
+  }
+
+  // Retrieve the longest sequence as a fresh list. If there is a tie
+  // the earliest longest sequence to appear is returned.
+  //
+  // Target Complexity: O(L)
+  //   L: length of the longest sequence
+  public List< RowColElem<T> > getLongestSequence(){
+	  List<RowColElem<T>> seq = new ArrayList<RowColElem<T>>(longestLength);
+	  T x = box(longestCode);
+	  for (int k=0; k<longestLength; k++){
+		  seq.add(new RowColElem<T>(longestRow+k*getLongestRowStep(),
+				  longestCol+k*getLongestColStep(), x));
+	  }
+	  return seq;
+  }
+
+  // Undo the last set, restoring the longest sequence from before it.
+  // The extent does not shrink. If there are no sets to undo this
+  // raises a RuntimeException with the message "Undo history is empty"
+  //
+  // Target Complexity: O(1)
+  public void undoSet(){
+	  if (moves == 0)
+		  throw new RuntimeException("Undo history is empty");
+	  moves--;
+	  redoable++;
+	  int h = moves*MOVE;
+	  store(index(history[h], history[h+1]), emptyCode);
+	  longestView = null;
+	  longestRow = history[h+3];
+	  longestCol = history[h+4];
+	  longestDir = history[h+5];
+	  longestLength = history[h+6];
+	  longestCode = history[h+7];
+  }
+
+  // Redo a set undone by undoSet(). If there is nothing to redo this
+  // raises a RuntimeException with the message "Redo history is empty"
+  //
+  // Target Complexity: O(K)
+  public void redoSet(){
+	  if (redoable == 0)
+		  throw new RuntimeException("Redo history is empty");
+	  int h = moves*MOVE;
+	  int row = history[h], col = history[h+1], code = history[h+2];
+	  store(index(row,col), code);
+	  moves++;
+	  redoable--;
+	  trackLongest(row, col, code);
+  }
+
+  // toString() - create a pretty representation of board in the same
+  // format as DenseBoard.
+  //
+  // Target Complexity: O(R*C)
+  public String toString(){
+	  StringBuilder builder = new StringBuilder();
+	  builder.append("    |");
+	  for (int j=minCol; j<=maxCol; j++){
+		  builder.append(String.format("%1$3d|", j));
+	  }
+	  builder.append("\n    +");
+	  for (int j=minCol; j<=maxCol; j++){
+		  builder.append("---+");
+	  }
+	  for (int i=minRow; i<=maxRow; i++){
+		  builder.append("\n");
+		  builder.append(String.format("%1$3d |",i));
+		  for (int j=minCol; j<=maxCol; j++){
+			  builder.append(String.format("%1$3s|", get(i,j)));
+		  }
+		  builder.append("\n    +");
+		  for (int j=minCol; j<=maxCol; j++){
+			  builder.append("---+");
+		  }
+	  }
+	  builder.append("\n");
+	  return builder.toString();
+  }
+
+}
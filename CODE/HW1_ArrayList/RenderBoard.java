@@ -0,0 +1,14 @@
+import java.io.IOException;
+// An ExpandableBoard that can write part of itself in the format of
+// toString() straight to an Appendable, so a large board can be shown
+// without building its whole text in memory first.
+public interface RenderBoard<T> extends ExpandableBoard<T>{
+
+  // render(out,r0,r1,c0,c1)
+  //
+  // Write rows r0..r1 and cols c0..c1 of the board to out in the same
+  // format as toString().  The rectangle may reach beyond the extent
+  // of the board; cells there show the fill element.
+  public void render(Appendable out, int r0, int r1, int c0, int c1) throws IOException;
+
+}
@@ -0,0 +1,13 @@
+// An ExpandableBoard that keeps a SequenceView of its longest sequence,
+// so it can be checked every turn without building a list of cells.
+public interface SequenceBoard<T> extends ExpandableBoard<T>{
+
+  // getLongestView()
+  //
+  // Return the longest sequence on the board, the same sequence as
+  // getLongestSequence(), as a SequenceView. Boards return a view they
+  // keep while the longest sequence does not change, so repeated calls
+  // allocate nothing.
+  public SequenceView<T> getLongestView();
+
+}
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+// An immutable description of a sequence of equal elements on a board:
+// its first cell, the row/col step from one cell to the next, its
+// length and its element.  Unlike the list of getLongestSequence() it
+// holds no object per cell, so boards can keep one for their longest
+// sequence and hand it out on every call.
+public final class SequenceView<T>{
+
+	private final int row, col, rowStep, colStep, length;
+	private final T elem;
+	//List the view was made from by of(list), for boards to check that
+	//a cached view is still current; null otherwise
+	private final List<RowColElem<T>> source;
+
+  // The sequence of length cells holding elem starting at row/col and
+  // moving rowStep/colStep each cell
+  public SequenceView(int row, int col, int rowStep, int colStep, int length, T elem){
+	  this(row, col, rowStep, colStep, length, elem, null);
+  }
+
+  private SequenceView(int row, int col, int rowStep, int colStep, int length, T elem,
+		  List<RowColElem<T>> source){
+	  if (length < 0)
+		  throw new RuntimeException("Negative sequence length");
+	  this.row = row;
+	  this.col = col;
+	  this.rowStep = rowStep;
+	  this.colStep = colStep;
+	  this.length = length;
+	  this.elem = elem;
+	  this.source = source;
+  }
+
+  // View of a sequence given as a list of cells each one step from the
+  // last, as returned by getLongestSequence(). An empty list gives an
+  // empty view.
+  public static <T> SequenceView<T> of(List<RowColElem<T>> seq){
+	  if (seq.isEmpty())
+		  return new SequenceView<T>(0, 0, 0, 1, 0, null, seq);
+	  RowColElem<T> first = seq.get(0);
+	  int rowStep = 0, colStep = 1;
+	  if (seq.size() > 1){
+		  rowStep = seq.get(1).getRow() - first.getRow();
+		  colStep = seq.get(1).getCol() - first.getCol();
+	  }
+	  return new SequenceView<T>(first.getRow(), first.getCol(), rowStep, colStep,
+			  seq.size(), first.getElem(), seq);
+  }
+
+  // The longest sequence of board, without building the list of its
+  // cells on boards that keep a view of it
+  public static <T> SequenceView<T> of(ExpandableBoard<T> board){
+	  if (board instanceof SequenceBoard)
+		  return ((SequenceBoard<T>) board).getLongestView();
+	  return of(board.getLongestSequence());
+  }
+
+  // Whether this view was made by of(list) from list itself
+  boolean isOf(List<RowColElem<T>> list){
+	  return source == list;
+  }
+
+  public int getRow(){
+	  return row;
+  }
+
+  public int getCol(){
+	  return col;
+  }
+
+  public int getRowStep(){
+	  return rowStep;
+  }
+
+  public int getColStep(){
+	  return colStep;
+  }
+
+  public int length(){
+	  return length;
+  }
+
+  // The element of every cell, null for an empty sequence
+  public T getElem(){
+	  return elem;
+  }
+
+  // Row and col of cell k of the sequence, 0 being the first
+  public int rowAt(int k){
+	  return row + k*rowStep;
+  }
+
+  public int colAt(int k){
+	  return col + k*colStep;
+  }
+
+  // Whether row/col is one of the cells of the sequence
+  //
+  // Complexity: O(1)
+  public boolean contains(int row, int col){
+	  int dRow = row - this.row, dCol = col - this.col;
+	  int k = (rowStep != 0) ? dRow/rowStep : dCol/colStep;
+	  return (k >= 0)&&(k < length)&&(rowAt(k) == row)&&(colAt(k) == col);
+  }
+
+  // The cells of the sequence in the form of getLongestSequence()
+  //
+  // Target Complexity: O(L)
+  public List<RowColElem<T>> toList(){
+	  List<RowColElem<T>> seq = new ArrayList<RowColElem<T>>(length);
+	  for (int k=0; k<length; k++){
+		  seq.add(new RowColElem<T>(rowAt(k), colAt(k), elem));
+	  }
+	  return seq;
+  }
+
+  // The same text as the list of toList()
+  public String toString(){
+	  StringBuilder builder = new StringBuilder("[");
+	  for (int k=0; k<length; k++){
+		  if (k > 0)
+			  builder.append(", ");
+		  builder.append('(').append(rowAt(k)).append(',').append(colAt(k)).append(',')
+			  .append(elem).append(')');
+	  }
+	  return builder.append(']').toString();
+  }
+
+}
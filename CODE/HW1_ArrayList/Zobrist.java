@@ -0,0 +1,47 @@
+// Zobrist keys for board positions.  The hash of a position is the XOR
+// of the keys of its explicitly set elements, so a board can keep it
+// up to date in O(1) by XORing an element's key in when it is set and
+// out again when the set is undone.  Two boards holding the same
+// elements at the same positions have the same hash no matter the
+// order the elements were set in.
+//
+// Classic Zobrist hashing draws a random number for every
+// position/symbol pair from a table.  Boards here are unbounded and
+// their elements can be any object, so the key is instead made by
+// mixing the row, col and hashCode() of the element with the
+// SplitMix64 finalizer, which spreads every input bit over the whole
+// 64-bit key.  Keys depend only on their inputs so hashes are the same
+// from run to run as long as the elements' hashCode() are.
+public class Zobrist{
+
+	//Odd constants from SplitMix64
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+	private static final long MIX1 = 0xBF58476D1CE4E5B9L;
+	private static final long MIX2 = 0x94D049BB133111EBL;
+
+  // Key of element x set at row/col
+  //
+  // Target Complexity: O(1) plus the cost of x.hashCode()
+  public static long key(int row, int col, Object x){
+	  long position = ((long)row << 32) | (col & 0xFFFFFFFFL);
+	  return mix(mix(position + GOLDEN) + x.hashCode() * GOLDEN);
+  }
+
+  // Key for the position row/col alone, for hash tables keyed by
+  // position. Packing row/col into a long is not enough there:
+  // Long.hashCode() of the packed value is row^col, so a square region
+  // has only as many hash codes as it has rows. The finalizer can be
+  // undone, so distinct positions still get distinct keys.
+  //
+  // Target Complexity: O(1)
+  public static long position(int row, int col){
+	  return mix(((long)row << 32) | (col & 0xFFFFFFFFL));
+  }
+
+  private static long mix(long z){
+	  z = (z ^ (z >>> 30)) * MIX1;
+	  z = (z ^ (z >>> 27)) * MIX2;
+	  return z ^ (z >>> 31);
+  }
+
+}
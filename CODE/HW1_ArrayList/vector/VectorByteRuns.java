@@ -0,0 +1,78 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+// ByteRuns on the Vector API: each compare handles as many cells as the
+// preferred vector holds, 32 with AVX2 and 64 with AVX-512.
+//
+// VectorMask.toLong() is not an intrinsic before JDK 18 and boxes on
+// every call, so the lane mask is turned into bits inside the vector:
+// blended to a 0 or 1 per byte, each long lane gathers its 8 bytes into
+// 8 bits with a multiply, the lanes are shifted into place and OR-ed
+// together.
+//
+// jdk.incubator.vector is not resolved by default, so this class is
+// kept out of the directory compiled with plain javac.  Build and run
+// it with the module added, from the directory above:
+//
+//   javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorByteRuns.java
+//   java --add-modules jdk.incubator.vector ...
+//
+// Without it ByteBoard uses ScalarByteRuns.
+public class VectorByteRuns implements ByteRuns{
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Long> LONGS = SPECIES.withLanes(long.class);
+	//Lanes per vector, a divisor of 64
+	private static final int LANES = SPECIES.length();
+	private static final ByteVector ZERO = ByteVector.zero(SPECIES);
+	//Bit position of the 8 bits gathered from each long lane
+	private static final LongVector SHIFTS = LongVector.fromArray(LONGS,
+			new long[]{0, 8, 16, 24, 32, 40, 48, 56}, 0);
+
+  // Bit k set for each lane k of mask that is set
+  private static long bits(VectorMask<Byte> mask){
+	  return ZERO.blend((byte) 1, mask).reinterpretAsLongs()
+		  .mul(0x0102040810204080L)
+		  .lanewise(VectorOperators.LSHR, 56)
+		  .lanewise(VectorOperators.LSHL, SHIFTS)
+		  .reduceLanes(VectorOperators.OR);
+  }
+
+  public void equalRow(byte[] cells, int a, int b, int n, long[] out){
+	  int words = (n+63) >>> 6;
+	  for (int w=0; w<words; w++){
+		  out[w] = 0;
+	  }
+	  int k = 0;
+	  for (; k+LANES<=n; k+=LANES){
+		  ByteVector x = ByteVector.fromArray(SPECIES, cells, a+k);
+		  ByteVector y = ByteVector.fromArray(SPECIES, cells, b+k);
+		  VectorMask<Byte> equal = x.compare(VectorOperators.EQ, y)
+			  .and(x.compare(VectorOperators.NE, ZERO));
+		  out[k >>> 6] |= bits(equal) << (k & 63);
+	  }
+	  for (; k<n; k++){
+		  if (cells[a+k] != 0 && cells[a+k] == cells[b+k])
+			  out[k >>> 6] |= 1L << (k & 63);
+	  }
+  }
+
+  public void setRow(byte[] cells, int a, int n, long[] out){
+	  int words = (n+63) >>> 6;
+	  for (int w=0; w<words; w++){
+		  out[w] = 0;
+	  }
+	  int k = 0;
+	  for (; k+LANES<=n; k+=LANES){
+		  ByteVector x = ByteVector.fromArray(SPECIES, cells, a+k);
+		  out[k >>> 6] |= bits(x.compare(VectorOperators.NE, ZERO)) << (k & 63);
+	  }
+	  for (; k<n; k++){
+		  if (cells[a+k] != 0)
+			  out[k >>> 6] |= 1L << (k & 63);
+	  }
+  }
+
+}
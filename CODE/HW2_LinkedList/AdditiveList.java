@@ -91,6 +91,46 @@ public class AdditiveList<T> implements Iterable<T>{
     redos.clear();
   }
 
+  // Adds an item directly after node p, or at the front of the list
+  // if p is null, and returns the node holding it. The add can be
+  // undone like any other add.
+  //
+  // Target Complexity: O(1) (worst case)
+  public Node<T> addAfter( Node<T> p, T x ){
+    Node<T> newNode = linkAfter( p, x );
+    undos.push(newNode);
+    redos.clear();
+    return newNode;
+  }
+
+  // Same as addAfter() but the add is not recorded in the undo/redo
+  // history.  Meant for owners of the list that keep their own
+  // history and undo with unlink().
+  //
+  // Target Complexity: O(1) (worst case)
+  public Node<T> linkAfter( Node<T> p, T x ){
+    if( p == null )
+      p = beginMarker;
+    Node<T> newNode = new Node<T>( x, p, p.next );
+    p.next.prev = newNode;
+    p.next = newNode;
+    theSize++;
+    modCount++;
+    return newNode;
+  }
+
+  // Take node p out of the list without recording it in the undo/redo
+  // history.  Only nodes added by linkAfter() should be unlinked so
+  // that the list's own history stays valid.
+  //
+  // Target Complexity: O(1) (worst case)
+  public void unlink( Node<T> p ){
+    p.prev.next = p.next;
+    p.next.prev = p.prev;
+    theSize--;
+    modCount++;
+  }
+
   // Adds all item in given iterable collection to the end of this
   // collection.
   // @param c a collection which can be iterated over
@@ -288,9 +328,11 @@ public class AdditiveList<T> implements Iterable<T>{
 	  if (!canRedo())
 		  throw new RuntimeException("Redo history is empty");
 	  Node<T> toAdd = redos.topAndPop();
+	  undos.push(toAdd);
 	  toAdd.next.prev = toAdd;
 	  toAdd.prev.next = toAdd;
 	  theSize++;
+	  modCount++;
   }
 
   // REQUIRED: Return true if any adds to the list can be undone and
@@ -311,6 +353,17 @@ public class AdditiveList<T> implements Iterable<T>{
 		return true;
   }
 
+  // Return the node holding the most recent add that can be undone,
+  // or null if there is none. This is the node the next undo() will
+  // unlink and the node the last redo() relinked.
+  //
+  // Target Complexity: O(1) (worst case)
+  public Node<T> lastAddedNode(){
+	  if (undos.isEmpty())
+		  return null;
+	  return undos.getTop();
+  }
+
   // REQUIRED: Clears the history of all adds; subsequently cannot
   // undo or redo until more adds have been made.
   public void clearHistory(){
@@ -0,0 +1,24 @@
+import java.util.Collection;
+// An ExpandableBoard that can set a batch of elements as one step of
+// its undo/redo history and can be expanded ahead of the elements set
+// on it.
+public interface BatchBoard<T> extends ExpandableBoard<T>{
+
+  // expandToInclude(row,col)
+  //
+  // Expand the extent of the board to include row/col and return the
+  // number of cells the board had to allocate for it, which may be 0
+  // for boards that do not allocate by extent.
+  public int expandToInclude(int row, int col);
+
+  // setAll(cells)
+  //
+  // Set every element of cells as a single step: one call to undoSet()
+  // removes them all and one call to redoSet() puts them back.
+  // Elements equal to the fill element are skipped.  Every element is
+  // checked before the board is changed, so if one of them is null or
+  // its position is already set the same RuntimeException as set() is
+  // raised and the board is left as it was.
+  public void setAll(Collection<RowColElem<T>> cells);
+
+}
@@ -0,0 +1,394 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+// Microbenchmarks of the operations of ExpandableBoard implementations,
+// measured the way JMH measures average time: warmup iterations, then
+// measurement iterations each running the benchmark in batches for a
+// fixed time, with the setup of each batch left out of the timing and
+// every result consumed so the JIT cannot drop the work.
+//
+//   java BoardBench [-extent 32,128] [-density 0.1,0.5] [-symbols 2,8]
+//                   [-warmup 3] [-iterations 5] [-time 200] BoardClass...
+//
+// Each board class named, made with its bounds constructor or else its
+// fill element constructor, is benchmarked at every combination of
+// board extent (rows and columns), fill density (fraction of the cells
+// set, in random order) and symbol count (how many symbols the cells
+// are set to); classes without either constructor, like IntBoard and
+// CharBoard, are skipped.  Add the directories holding the classes to
+// the classpath to compare boards from different directories.
+//
+//   set         set empty cells, undone outside the timing
+//   get         get random cells of the extent
+//   expandN/S/W/E  expand the board one row or column at a time in each
+//               direction, on a new filled board each batch; skipped
+//               on boards without an expandToInclude method
+//   longest     getLongestSequence()
+//   view        the longest sequence as a SequenceView
+//   rescan      search the whole board for its longest sequence; only
+//               on boards with a rescan method, DenseBoard and ByteBoard
+//   undo        undoSet(), redone outside the timing
+//   redo        redoSet(), undone outside the timing
+//   toString    toString() of the whole board
+//
+// Benchmarks that cannot run, set on a full board or undo and redo on
+// an empty one, are left out.
+//
+// Each line of the report gives the mean time per operation with the
+// standard deviation across measurement iterations and, like the gc
+// profiler of JMH, the bytes allocated per operation where the JVM can
+// count them.
+public class BoardBench{
+
+	private static final String[] BENCHMARKS = {"set", "get", "expandN", "expandS",
+		"expandW", "expandE", "longest", "view", "rescan", "undo", "redo", "toString"};
+	//Operations per batch of the cheap benchmarks
+	private static final int BATCH = 256;
+	//Results are folded into this so no work is dead code
+	static volatile int sink;
+
+	// A filled board and what the benchmarks need to run on it
+	private static class State{
+		Class<?> boardClass;
+		Method expand, rescan;
+		int extent, symbols, moves;
+		double density;
+		ExpandableBoard<String> board;
+		//Cells left empty by the fill, shuffled; next empty to set
+		int[] emptyRows, emptyCols;
+		int nextEmpty = 0;
+		//Random cells to get
+		int[] getRows, getCols;
+		//true when the board must be rebuilt before the next batch
+		boolean dirty = false;
+		Random random = new Random(42);
+	}
+
+  public static void main(String[] args) throws Exception{
+	  int[] extents = {32, 128};
+	  double[] densities = {0.1, 0.5};
+	  int[] symbolCounts = {2, 8};
+	  int warmup = 3, iterations = 5, millis = 200;
+	  List<Class<?>> boards = new ArrayList<Class<?>>();
+	  for (int i=0; i<args.length; i++){
+		  switch (args[i]){
+		  case "-extent": extents = ints(args[++i]); break;
+		  case "-density": densities = doubles(args[++i]); break;
+		  case "-symbols": symbolCounts = ints(args[++i]); break;
+		  case "-warmup": warmup = Integer.parseInt(args[++i]); break;
+		  case "-iterations": iterations = Integer.parseInt(args[++i]); break;
+		  case "-time": millis = Integer.parseInt(args[++i]); break;
+		  default: boards.add(Class.forName(args[i]));
+		  }
+	  }
+	  if (boards.isEmpty()){
+		  System.out.println("usage: java BoardBench [-extent 32,128] [-density 0.1,0.5] [-symbols 2,8]");
+		  System.out.println("                       [-warmup 3] [-iterations 5] [-time 200] BoardClass...");
+		  return;
+	  }
+	  System.out.println(String.format("%-10s %-22s %6s %7s %7s %14s %10s %10s",
+			  "Benchmark", "Board", "extent", "density", "symbols", "ns/op", "error", "B/op"));
+	  for (Class<?> boardClass : boards){
+		  if (!holdsStrings(boardClass)){
+			  System.out.println("skipped "+boardClass.getName()+": no (Object) constructor for String symbols");
+			  continue;
+		  }
+		  for (int extent : extents){
+			  for (double density : densities){
+				  for (int symbols : symbolCounts){
+					  State s = newState(boardClass, extent, density, symbols);
+					  for (String benchmark : BENCHMARKS){
+						  if (!applies(s, benchmark))
+							  continue;
+						  double[] result = measure(s, benchmark, warmup, iterations, millis*1000000L);
+						  System.out.println(String.format("%-10s %-22s %6d %7.2f %7d %14.1f %10.1f %10s",
+								  benchmark, boardClass.getName(), extent, density, symbols,
+								  result[0], result[1], Double.isNaN(result[2]) ? "n/a"
+										  : String.format("%.1f", result[2])));
+					  }
+				  }
+			  }
+		  }
+	  }
+  }
+
+  // Whether boardClass can be made by fill(): boards of one element
+  // type such as IntBoard cannot hold the String symbols
+  private static boolean holdsStrings(Class<?> boardClass){
+	  try{
+		  boardClass.getConstructor(int.class, int.class, int.class, int.class, Object.class);
+		  return true;
+	  }
+	  catch (NoSuchMethodException e){
+		  //try the fill element constructor
+	  }
+	  try{
+		  boardClass.getConstructor(Object.class);
+		  return true;
+	  }
+	  catch (NoSuchMethodException e){
+		  return false;
+	  }
+  }
+
+  // Whether benchmark can run on s
+  private static boolean applies(State s, String benchmark){
+	  if (benchmark.startsWith("expand"))
+		  return s.expand != null;
+	  if (benchmark.equals("rescan"))
+		  return s.rescan != null;
+	  if (benchmark.equals("set"))
+		  return s.emptyRows.length > 0;
+	  if (benchmark.equals("undo") || benchmark.equals("redo"))
+		  return s.moves > 0;
+	  return true;
+  }
+
+  private static int[] ints(String list){
+	  return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+  }
+
+  private static double[] doubles(String list){
+	  return Arrays.stream(list.split(",")).mapToDouble(Double::parseDouble).toArray();
+  }
+
+  private static State newState(Class<?> boardClass, int extent, double density, int symbols)
+		  throws ReflectiveOperationException{
+	  State s = new State();
+	  s.boardClass = boardClass;
+	  s.extent = extent;
+	  s.density = density;
+	  s.symbols = symbols;
+	  try{
+		  s.expand = boardClass.getMethod("expandToInclude", int.class, int.class);
+	  }
+	  catch (NoSuchMethodException e){
+		  //no expand benchmarks
+	  }
+	  try{
+		  s.rescan = boardClass.getMethod("rescan");
+	  }
+	  catch (NoSuchMethodException e){
+		  //no rescan benchmark
+	  }
+	  s.getRows = new int[BATCH];
+	  s.getCols = new int[BATCH];
+	  for (int i=0; i<BATCH; i++){
+		  s.getRows[i] = s.random.nextInt(extent);
+		  s.getCols[i] = s.random.nextInt(extent);
+	  }
+	  fill(s);
+	  return s;
+  }
+
+  // Make a new board of the extent of s and set the density of s of
+  // its cells, the same cells to the same symbols every time
+  @SuppressWarnings("unchecked")
+  private static void fill(State s) throws ReflectiveOperationException{
+	  int n = s.extent;
+	  try{
+		  Constructor<?> bounds = s.boardClass.getConstructor(int.class, int.class,
+				  int.class, int.class, Object.class);
+		  s.board = (ExpandableBoard<String>) bounds.newInstance(0, n-1, 0, n-1, "-");
+	  }
+	  catch (NoSuchMethodException e){
+		  s.board = (ExpandableBoard<String>) s.boardClass.getConstructor(Object.class).newInstance("-");
+	  }
+	  int[] cells = new int[n*n];
+	  for (int i=0; i<cells.length; i++){
+		  cells[i] = i;
+	  }
+	  Random random = new Random(s.extent * 31 + s.symbols);
+	  for (int i=cells.length-1; i>0; i--){
+		  int j = random.nextInt(i+1), t = cells[i];
+		  cells[i] = cells[j];
+		  cells[j] = t;
+	  }
+	  s.moves = (int) Math.round(s.density * cells.length);
+	  for (int i=0; i<s.moves; i++){
+		  s.board.set(cells[i] / n, cells[i] % n, symbol(random.nextInt(s.symbols)));
+	  }
+	  s.emptyRows = new int[cells.length - s.moves];
+	  s.emptyCols = new int[cells.length - s.moves];
+	  for (int i=s.moves; i<cells.length; i++){
+		  s.emptyRows[i-s.moves] = cells[i] / n;
+		  s.emptyCols[i-s.moves] = cells[i] % n;
+	  }
+	  s.nextEmpty = 0;
+	  s.dirty = false;
+  }
+
+  private static String symbol(int i){
+	  return String.valueOf((char) ('A' + i));
+  }
+
+  // Run benchmark on s: warmup iterations, then measurement iterations
+  // of about nanos of timed work each. Returns the mean ns/op, its
+  // standard deviation across iterations and the bytes allocated per
+  // operation, NaN where they cannot be counted.
+  private static double[] measure(State s, String benchmark, int warmup, int iterations,
+		  long nanos) throws ReflectiveOperationException{
+	  ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	  com.sun.management.ThreadMXBean allocations =
+		  (threads instanceof com.sun.management.ThreadMXBean)
+		  ? (com.sun.management.ThreadMXBean) threads : null;
+	  long threadId = Thread.currentThread().getId();
+	  double[] perOp = new double[iterations];
+	  long allBytes = 0, allOps = 0;
+	  for (int it=-warmup; it<iterations; it++){
+		  long timed = 0, ops = 0, bytes = 0;
+		  long deadline = System.nanoTime() + 10*nanos;
+		  while (timed < nanos && System.nanoTime() < deadline){
+			  setup(s, benchmark);
+			  long before = (allocations == null) ? 0 : allocations.getThreadAllocatedBytes(threadId);
+			  long start = System.nanoTime();
+			  int n = batch(s, benchmark);
+			  timed += System.nanoTime() - start;
+			  if (allocations != null)
+				  bytes += allocations.getThreadAllocatedBytes(threadId) - before;
+			  ops += n;
+			  teardown(s, benchmark, n);
+		  }
+		  if (it >= 0){
+			  perOp[it] = (double) timed / ops;
+			  allBytes += bytes;
+			  allOps += ops;
+		  }
+	  }
+	  double mean = 0, variance = 0;
+	  for (double x : perOp){
+		  mean += x / iterations;
+	  }
+	  for (double x : perOp){
+		  variance += (x - mean) * (x - mean) / Math.max(1, iterations - 1);
+	  }
+	  double bytesPerOp = (allocations == null) ? Double.NaN : (double) allBytes / allOps;
+	  return new double[]{mean, Math.sqrt(variance), bytesPerOp};
+  }
+
+  // Untimed work before a batch
+  private static void setup(State s, String benchmark) throws ReflectiveOperationException{
+	  if (s.dirty)
+		  fill(s);
+	  if (benchmark.equals("redo")){
+		  for (int i=undoCount(s); i>0; i--){
+			  s.board.undoSet();
+		  }
+	  }
+	  else if (benchmark.equals("set") && s.nextEmpty + BATCH > s.emptyRows.length)
+		  s.nextEmpty = 0;
+  }
+
+  // The timed batch: returns the number of operations done
+  private static int batch(State s, String benchmark) throws ReflectiveOperationException{
+	  ExpandableBoard<String> board = s.board;
+	  int n = s.extent, x = 0;
+	  switch (benchmark){
+	  case "set":
+		  int count = Math.min(BATCH, s.emptyRows.length);
+		  for (int i=0; i<count; i++){
+			  int e = s.nextEmpty + i;
+			  board.set(s.emptyRows[e], s.emptyCols[e], symbol(e % s.symbols));
+		  }
+		  return count;
+	  case "get":
+		  for (int i=0; i<BATCH; i++){
+			  x += board.get(s.getRows[i], s.getCols[i]).hashCode();
+		  }
+		  sink = x;
+		  return BATCH;
+	  case "expandN": case "expandS": case "expandW": case "expandE":
+		  char d = benchmark.charAt(6);
+		  for (int i=1; i<=16; i++){
+			  int row = (d == 'N') ? -i : (d == 'S') ? n-1+i : n/2;
+			  int col = (d == 'W') ? -i : (d == 'E') ? n-1+i : n/2;
+			  x += expandToInclude(s, row, col);
+		  }
+		  sink = x;
+		  return 16;
+	  case "longest":
+		  for (int i=0; i<16; i++){
+			  x += board.getLongestSequence().size();
+		  }
+		  sink = x;
+		  return 16;
+	  case "view":
+		  for (int i=0; i<16; i++){
+			  x += SequenceView.of(board).length();
+		  }
+		  sink = x;
+		  return 16;
+	  case "rescan":
+		  invoke(s.rescan, board);
+		  sink = board.getLongestSequence().size();
+		  return 1;
+	  case "undo":
+		  count = undoCount(s);
+		  for (int i=0; i<count; i++){
+			  board.undoSet();
+		  }
+		  return count;
+	  case "redo":
+		  count = undoCount(s);
+		  for (int i=0; i<count; i++){
+			  board.redoSet();
+		  }
+		  return count;
+	  case "toString":
+		  sink = board.toString().length();
+		  return 1;
+	  }
+	  throw new RuntimeException("Unknown benchmark "+benchmark);
+  }
+
+  // Untimed work after a batch of n operations, putting the board back
+  private static void teardown(State s, String benchmark, int n){
+	  switch (benchmark){
+	  case "set":
+		  for (int i=0; i<n; i++){
+			  s.board.undoSet();
+		  }
+		  s.nextEmpty += n;
+		  break;
+	  case "undo":
+		  for (int i=0; i<n; i++){
+			  s.board.redoSet();
+		  }
+		  break;
+	  case "expandN": case "expandS": case "expandW": case "expandE":
+		  s.dirty = true;
+		  break;
+	  }
+  }
+
+  private static int undoCount(State s){
+	  return Math.min(BATCH, s.moves);
+  }
+
+  private static int expandToInclude(State s, int row, int col) throws ReflectiveOperationException{
+	  Object added = invoke(s.expand, s.board, row, col);
+	  return (added instanceof Integer) ? (Integer) added : 0;
+  }
+
+  // Call method on board, raising what it raises
+  private static Object invoke(Method method, Object board, Object... args)
+		  throws ReflectiveOperationException{
+	  try{
+		  return method.invoke(board, args);
+	  }
+	  catch (InvocationTargetException e){
+		  if (e.getCause() instanceof RuntimeException)
+			  throw (RuntimeException) e.getCause();
+		  if (e.getCause() instanceof Error)
+			  throw (Error) e.getCause();
+		  throw e;
+	  }
+  }
+
+}
@@ -0,0 +1,513 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+// A computer player for Gomoku that works on any ExpandableBoard.
+//
+// chooseMove() copies the stones on the board into its own compact
+// position and searches it with iterative-deepening alpha-beta until
+// its time budget runs out, returning the best move of the deepest
+// search that finished.  With more than two players the search is
+// "paranoid": every other player is assumed to play against the
+// player choosing the move.
+//
+// Only empty cells within RADIUS of a stone are tried and at each node
+// they are ordered by how much they extend or block runs, keeping the
+// MAX_WIDTH best.  Moves are row/col packed into a long and are kept
+// in long[]s so that generating them boxes nothing.  Positions are
+// scored from the counts of a ThreatIndex and positions already
+// searched are kept in a transposition table keyed by their Zobrist
+// hash.
+//
+// At the root the first move is searched alone to get a bound and the
+// remaining moves are searched in parallel on a ForkJoinPool, each on
+// its own copy of the position, sharing the bound and the table.  The
+// stones of a position are a PersistentBoard so a copy shares them
+// with the position it was made from.
+public class GomokuAI<T>{
+
+	//Scores at or beyond WIN - MAX_DEPTH are wins (or losses when
+	//negative); the sooner the win the higher the score
+	private static final int WIN = 1000000000;
+	private static final int INFINITY = Integer.MAX_VALUE;
+	private static final int MAX_DEPTH = 64;
+	//Candidate moves are empty cells within RADIUS rows/cols of a stone
+	private static final int RADIUS = 2;
+	//Most moves tried at a node below the root
+	private static final int MAX_WIDTH = 12;
+	//The table is cleared once it holds this many positions
+	private static final int TABLE_LIMIT = 1 << 20;
+	//Kinds of transposition table entries
+	private static final int EXACT = 0, LOWER = 1, UPPER = 2;
+	//Fill element of the stones of a Position
+	private static final int EMPTY = -1;
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
+
+	private final List<T> players;
+	private final int winLength;
+	private final ForkJoinPool pool;
+	//Whether the pool was made for this player and is shut down by close()
+	private final boolean ownsPool;
+	private final ConcurrentHashMap<Long,Entry> table = new ConcurrentHashMap<Long,Entry>();
+	private final LongAdder nodes = new LongAdder();
+	//Player the current search is for and when it must stop
+	private int me;
+	private long deadline;
+	private int depthReached;
+
+	// Result of searching a position to some depth
+	private static class Entry{
+		public final int depth, score, kind;
+		public final long move;
+
+		public Entry(int depth, int score, int kind, long move){
+			this.depth = depth;
+			this.score = score;
+			this.kind = kind;
+			this.move = move;
+		}
+	}
+
+	// Thrown through the search once the deadline passes. It carries no
+	// stack trace so that throwing it is cheap.
+	@SuppressWarnings("serial")
+	private static class OutOfTime extends RuntimeException{
+		public OutOfTime(){
+			super("Out of time", null, false, false);
+		}
+	}
+	private static final OutOfTime OUT_OF_TIME = new OutOfTime();
+
+  // Create a computer player for a game where players take turns in
+  // the order given and the first to get winLength in a row wins.
+  // Searches run on the common ForkJoinPool.
+  public GomokuAI(List<T> players, int winLength){
+	  this(players, winLength, ForkJoinPool.commonPool(), false);
+  }
+
+  // Same as above but searches use a pool of the given number of
+  // threads, which close() shuts down.
+  public GomokuAI(List<T> players, int winLength, int threads){
+	  this(players, winLength, new ForkJoinPool(threads), true);
+  }
+
+  private GomokuAI(List<T> players, int winLength, ForkJoinPool pool, boolean ownsPool){
+	  if (winLength <= 0)
+		  throw new RuntimeException("Winning length must be positive");
+	  this.players = new ArrayList<T>(players);
+	  this.winLength = winLength;
+	  this.pool = pool;
+	  this.ownsPool = ownsPool;
+  }
+
+  // Shut down the pool made for this player, if any. chooseMove() must
+  // not be called after this.
+  public synchronized void close(){
+	  if (ownsPool)
+		  pool.shutdown();
+  }
+
+  // Number of positions visited by the last call to chooseMove()
+  public long getNodesSearched(){
+	  return nodes.sum();
+  }
+
+  // Depth of the deepest search finished by the last call to
+  // chooseMove()
+  public int getDepthReached(){
+	  return depthReached;
+  }
+
+  // Pick a move for players.get(turn) on board, taking about millis
+  // milliseconds.  Elements on the board that are not one of the
+  // players block runs.  A winning move is returned right away.  On a
+  // board without stones the middle of the extent is chosen.
+  //
+  // Target Complexity: O(P * E) to copy the board plus the time budget
+  //   P: number of cells in the extent of the board
+  //   E: number of stones
+  public synchronized RowColElem<T> chooseMove(ExpandableBoard<T> board,
+		  int turn, long millis){
+	  me = turn;
+	  deadline = System.nanoTime() + millis*1000000L;
+	  nodes.reset();
+	  depthReached = 0;
+	  if (table.size() > TABLE_LIMIT)
+		  table.clear();
+
+	  Position pos = new Position(board);
+	  long[] moves = pos.orderedMoves(turn, Integer.MAX_VALUE, 0L);
+	  if (moves.length == 0){
+		  return new RowColElem<T>((board.getMinRow()+board.getMaxRow())/2,
+				  (board.getMinCol()+board.getMaxCol())/2, players.get(turn));
+	  }
+	  long best = moves[0];
+	  if ((moves.length > 1)&&!pos.wins(best, turn)){
+		  for (int depth=1; depth<=MAX_DEPTH; depth++){
+			  int[] result = searchRoot(pos, moves, depth, turn);
+			  if (result == null)
+				  break;
+			  best = moves[result[0]];
+			  depthReached = depth;
+			  //search the best move first next time
+			  System.arraycopy(moves, 0, moves, 1, result[0]);
+			  moves[0] = best;
+			  if (Math.abs(result[1]) >= WIN - MAX_DEPTH)
+				  break;
+		  }
+	  }
+	  return new RowColElem<T>(row(best), col(best), players.get(turn));
+  }
+
+  // Search every root move to depth. Returns the index of the best move
+  // and its score, or null if time ran out.
+  private int[] searchRoot(Position pos, long[] moves, int depth, int turn){
+	  int first;
+	  try{
+		  first = scoreMove(pos, moves[0], depth, turn, -INFINITY);
+	  }
+	  catch (OutOfTime e){
+		  return null;
+	  }
+	  final AtomicInteger alpha = new AtomicInteger(first);
+	  List<RootTask> tasks = new ArrayList<RootTask>();
+	  for (int i=1; i<moves.length; i++){
+		  RootTask task = new RootTask(pos.copy(), moves[i], depth, turn, alpha);
+		  tasks.add(task);
+		  pool.execute(task);
+	  }
+	  int[] result = {0, first};
+	  boolean finished = true;
+	  for (int i=0; i<tasks.size(); i++){
+		  Integer score = tasks.get(i).join();
+		  if (score == null)
+			  finished = false;
+		  else if (score > result[1]){
+			  result[0] = i+1;
+			  result[1] = score;
+		  }
+	  }
+	  return finished ? result : null;
+  }
+
+  // Search of one root move on a private copy of the position. Returns
+  // null if time ran out.
+  @SuppressWarnings("serial")
+  private class RootTask extends RecursiveTask<Integer>{
+	  private final Position pos;
+	  private final long move;
+	  private final int depth, turn;
+	  private final AtomicInteger alpha;
+
+	  public RootTask(Position pos, long move, int depth, int turn, AtomicInteger alpha){
+		  this.pos = pos;
+		  this.move = move;
+		  this.depth = depth;
+		  this.turn = turn;
+		  this.alpha = alpha;
+	  }
+
+	  protected Integer compute(){
+		  try{
+			  int bound = alpha.get();
+			  int score = scoreMove(pos, move, depth, turn, bound);
+			  //a score at or below the bound only says the move is no
+			  //better than one already searched
+			  if (score <= bound)
+				  return -INFINITY;
+			  alpha.accumulateAndGet(score, Math::max);
+			  return score;
+		  }
+		  catch (OutOfTime e){
+			  return null;
+		  }
+	  }
+  }
+
+  // Score of the root player moving at move, searched to depth with the
+  // lower bound alpha.
+  private int scoreMove(Position pos, long move, int depth, int turn, int alpha){
+	  pos.place(move, turn);
+	  try{
+		  if (pos.wins(move, turn))
+			  return WIN - 1;
+		  return search(pos, depth-1, 1, next(turn), alpha, INFINITY);
+	  }
+	  finally{
+		  pos.remove(move);
+	  }
+  }
+
+  // Alpha-beta search of pos with turn to move. Scores are from the
+  // point of view of the player the search is for, who maximizes while
+  // all other players minimize.
+  private int search(Position pos, int depth, int ply, int turn, int alpha, int beta){
+	  nodes.increment();
+	  if ((++pos.visited & 255) == 0 && System.nanoTime() > deadline)
+		  throw OUT_OF_TIME;
+	  if (depth == 0)
+		  return pos.evaluate();
+
+	  long key = pos.hash ^ ((turn*players.size() + me + 1) * 0x9E3779B97F4A7C15L);
+	  Entry entry = table.get(key);
+	  long hint = 0L;
+	  if (entry != null){
+		  hint = entry.move;
+		  if (entry.depth >= depth){
+			  if (entry.kind == EXACT)
+				  return entry.score;
+			  if (entry.kind == LOWER)
+				  alpha = Math.max(alpha, entry.score);
+			  else
+				  beta = Math.min(beta, entry.score);
+			  if (alpha >= beta)
+				  return entry.score;
+		  }
+	  }
+
+	  long[] moves = pos.orderedMoves(turn, MAX_WIDTH, hint);
+	  if (moves.length == 0)
+		  return pos.evaluate();
+	  boolean maximizing = (turn == me);
+	  int alphaStart = alpha, betaStart = beta;
+	  int best = maximizing ? -INFINITY : INFINITY;
+	  long bestMove = moves[0];
+	  for (long move : moves){
+		  int score;
+		  pos.place(move, turn);
+		  try{
+			  if (pos.wins(move, turn))
+				  score = maximizing ? WIN - ply - 1 : -(WIN - ply - 1);
+			  else
+				  score = search(pos, depth-1, ply+1, next(turn), alpha, beta);
+		  }
+		  finally{
+			  pos.remove(move);
+		  }
+		  if (maximizing ? score > best : score < best){
+			  best = score;
+			  bestMove = move;
+		  }
+		  if (maximizing)
+			  alpha = Math.max(alpha, score);
+		  else
+			  beta = Math.min(beta, score);
+		  if (alpha >= beta)
+			  break;
+	  }
+
+	  int kind = EXACT;
+	  if (best <= alphaStart)
+		  kind = UPPER;
+	  else if (best >= betaStart)
+		  kind = LOWER;
+	  table.put(key, new Entry(depth, best, kind, bestMove));
+	  return best;
+  }
+
+  private int next(int turn){
+	  return (turn + 1) % players.size();
+  }
+
+  // Pack a row/col into one key and take it apart again
+  private static long key(int row, int col){
+	  return ((long)row << 32) | (col & 0xFFFFFFFFL);
+  }
+  private static int row(long key){
+	  return (int) (key >> 32);
+  }
+  private static int col(long key){
+	  return (int) key;
+  }
+
+  // Stones on the board as indices into players; other elements are
+  // stored as players.size() so they never extend a run. A ThreatIndex
+  // of the stones is kept for evaluate(). Each search thread has its
+  // own Position.  place() replaces the PersistentBoard of stones with
+  // one holding the new stone, keeping the old one so remove() can go
+  // back to it.
+  private class Position{
+	  private PersistentBoard<Integer> stones;
+	  //Boards before each place() and the keys of the stones in the
+	  //order placed so remove() can undo place()
+	  private ArrayList<PersistentBoard<Integer>> before;
+	  private long[] placed;
+	  private int placedCount = 0;
+	  private ThreatIndex<Integer> threats;
+	  //Candidate moves of orderedMoves() and their scores, reused at
+	  //every node
+	  private long[] candidates = new long[64], scores = new long[64];
+	  public long hash = 0;
+	  public int visited = 0;
+
+	  public Position(ExpandableBoard<T> board){
+		  stones = new PersistentBoard<Integer>(EMPTY);
+		  before = new ArrayList<PersistentBoard<Integer>>();
+		  placed = new long[16];
+		  threats = new ThreatIndex<Integer>(winLength);
+		  for (int i=board.getMinRow(); i<=board.getMaxRow(); i++){
+			  for (int j=board.getMinCol(); j<=board.getMaxCol(); j++){
+				  T x = board.get(i,j);
+				  if (!x.equals(board.getFillElem())){
+					  int p = players.indexOf(x);
+					  place(key(i,j), (p < 0) ? players.size() : p);
+				  }
+			  }
+		  }
+	  }
+
+	  // Copy of other sharing its stones
+	  //
+	  // Target Complexity: O(E + P * winLength)
+	  private Position(Position other){
+		  stones = other.stones;
+		  before = new ArrayList<PersistentBoard<Integer>>(other.before);
+		  placed = other.placed.clone();
+		  placedCount = other.placedCount;
+		  threats = new ThreatIndex<Integer>(other.threats);
+		  hash = other.hash;
+	  }
+
+	  public Position copy(){
+		  return new Position(this);
+	  }
+
+	  public void place(long move, int player){
+		  before.add(stones);
+		  stones = stones.set(row(move), col(move), player);
+		  if (placedCount == placed.length)
+			  placed = Arrays.copyOf(placed, 2*placed.length);
+		  placed[placedCount++] = move;
+		  hash ^= Zobrist.key(row(move), col(move), player);
+		  threats.changed(row(move), col(move), null, player);
+	  }
+
+	  public void remove(long move){
+		  int player = stones.get(row(move), col(move));
+		  stones = before.remove(before.size()-1);
+		  placedCount--;
+		  hash ^= Zobrist.key(row(move), col(move), player);
+		  threats.changed(row(move), col(move), player, null);
+	  }
+
+	  private boolean owns(int row, int col, int player){
+		  return stones.get(row,col) == player;
+	  }
+
+	  private boolean isEmpty(long move){
+		  return stones.get(row(move), col(move)) == EMPTY;
+	  }
+
+	  // Stones of player in a row past row/col in direction dRow/dCol
+	  private int run(int row, int col, int dRow, int dCol, int player){
+		  int count = 0;
+		  for (int i=row+dRow, j=col+dCol; owns(i,j,player); i+=dRow, j+=dCol){
+			  count++;
+		  }
+		  return count;
+	  }
+
+	  // Longest line player would have through move
+	  private int lineThrough(long move, int player){
+		  int r = row(move), c = col(move);
+		  int longest = 0;
+		  for (int[] d : DIRECTIONS){
+			  int length = 1 + run(r, c, d[0], d[1], player) + run(r, c, -d[0], -d[1], player);
+			  longest = Math.max(longest, length);
+		  }
+		  return longest;
+	  }
+
+	  // True if player has a winning line through move
+	  public boolean wins(long move, int player){
+		  return lineThrough(move, player) >= winLength;
+	  }
+
+	  // Empty cells near stones, best first, at most width of them. A
+	  // cell scores for the runs it extends for the player to move and
+	  // the runs it blocks for the others; of cells with the same score
+	  // the one with the smaller key comes first. hint is searched first
+	  // if it is one of the moves.
+	  //
+	  // Target Complexity: O(N log N + N*P*winLength + N*width)
+	  //   N: number of cells within RADIUS of a stone
+	  public long[] orderedMoves(int turn, int width, long hint){
+		  //empty cells around the stones, sorted so repeats are together
+		  int area = (2*RADIUS+1)*(2*RADIUS+1);
+		  if (candidates.length < placedCount*area){
+			  candidates = new long[placedCount*area];
+			  scores = new long[placedCount*area];
+		  }
+		  int n = 0;
+		  for (int s=0; s<placedCount; s++){
+			  long stone = placed[s];
+			  for (int dr=-RADIUS; dr<=RADIUS; dr++){
+				  for (int dc=-RADIUS; dc<=RADIUS; dc++){
+					  long move = key(row(stone)+dr, col(stone)+dc);
+					  if (isEmpty(move))
+						  candidates[n++] = move;
+				  }
+			  }
+		  }
+		  Arrays.sort(candidates, 0, n);
+		  int unique = 0;
+		  for (int i=0; i<n; i++){
+			  long move = candidates[i];
+			  if ((unique > 0)&&(candidates[unique-1] == move))
+				  continue;
+			  long score = 0;
+			  for (int p=0; p<players.size(); p++){
+				  int length = Math.min(lineThrough(move, p), winLength);
+				  //completing a line beats everything, blocking one is next
+				  long weight = (length >= winLength) ? 1L << 40 : 1L << (2*length);
+				  score += (p == turn) ? 4*weight : weight;
+			  }
+			  if (move == hint)
+				  score = Long.MAX_VALUE;
+			  candidates[unique] = move;
+			  scores[unique++] = score;
+		  }
+		  //pick the best width of them in order
+		  long[] moves = new long[Math.min(width, unique)];
+		  for (int k=0; k<moves.length; k++){
+			  int top = k;
+			  for (int i=k+1; i<unique; i++){
+				  if (scores[i] > scores[top])
+					  top = i;
+			  }
+			  moves[k] = candidates[top];
+			  //shift the others down to keep ties in key order
+			  long topScore = scores[top];
+			  System.arraycopy(candidates, k, candidates, k+1, top-k);
+			  System.arraycopy(scores, k, scores, k+1, top-k);
+			  candidates[k] = moves[k];
+			  scores[k] = topScore;
+		  }
+		  return moves;
+	  }
+
+	  // Static score of the position for the player the search is for:
+	  // the value of their threats minus the value of everyone else's.
+	  // A window is worth more the more stones it holds and open
+	  // windows are worth more again.
+	  public int evaluate(){
+		  long total = 0;
+		  for (int p=0; p<players.size(); p++){
+			  long value = 0;
+			  for (int k=1; k<winLength; k++){
+				  int shift = 3*Math.min(k, 9);
+				  value += (long) threats.getCount(p, k) << shift;
+				  value += (long) threats.getOpenCount(p, k) << (shift+1);
+			  }
+			  total += (p == me) ? value : -value;
+		  }
+		  return (int) Math.max(-(WIN - MAX_DEPTH - 1), Math.min(WIN - MAX_DEPTH - 1, total));
+	  }
+  }
+
+}
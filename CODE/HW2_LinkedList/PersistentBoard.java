@@ -0,0 +1,358 @@
+import java.util.ArrayList;
+import java.util.List;
+// An immutable board meant for game tree search.  set() does not
+// change the board it is called on; it returns a new board that holds
+// the extra element.  Both boards share everything except the path to
+// the changed cell so many positions can be kept at once, e.g. one per
+// search thread, without copying the whole board or undoing moves.
+//
+// Elements are stored in a quadtree.  The root covers a square of
+// 2^rootBits cells on a side and each inner node splits its square
+// into four quadrants down to leaves of LEAF_SIZE x LEAF_SIZE cells.
+// Quadrants that hold no elements are null.  set() copies only the
+// nodes on the path from the root to the leaf holding row/col.  When
+// an element falls outside the root square a new root of twice the
+// size is made with the old root as one of its quadrants.
+//
+// Because a board never changes it has no undoSet()/redoSet(): keeping
+// a reference to an earlier board is enough to go back to it.  For the
+// same reason it does not implement ExpandableBoard, whose set()
+// changes the board in place.
+//
+// Target Space Complexity: O(E * log N) over all boards derived from
+// one another, O(E * LEAF_SIZE^2) for a single board
+//  E: The number of elements set
+//  N: The width of the area spanned by the elements
+public class PersistentBoard<T>{
+
+	//Leaves are 2^LEAF_BITS cells on a side
+	public static final int LEAF_BITS = 3;
+	public static final int LEAF_SIZE = 1 << LEAF_BITS;
+	private static final int LEAF_MASK = LEAF_SIZE - 1;
+	//Row/col steps for horizontal, vertical, diagonal and reverse diagonal
+	private static final int[][] DIRECTIONS = {{0,1},{1,0},{1,1},{1,-1}};
+
+	private final int minRow, maxRow, minCol, maxCol;
+	private final T fillElem;
+	//Root of the quadtree or null if nothing is set. The root covers
+	//the square with top left at rootRow/rootCol and 2^rootBits cells
+	//on a side.
+	private final Node root;
+	private final long rootRow, rootCol;
+	private final int rootBits;
+	//Number of elements set
+	private final int size;
+	//Longest sequence; never changed once a board is made so it can be
+	//shared between boards
+	private final List<RowColElem<T>> longest;
+
+	// A quadtree node: inner nodes have four quadrants ordered top left,
+	// top right, bottom left, bottom right and leaves have cells. Nodes
+	// are never changed once they are part of a board.
+	private static class Node{
+		public final Node[] quadrants;
+		public final Object[] cells;
+
+		public Node(Node[] quadrants, Object[] cells){
+			this.quadrants = quadrants;
+			this.cells = cells;
+		}
+	}
+
+  // Workhorse constructor.  Creates an empty board with the given
+  // extent. Any get() will return the fillElem specified.  The
+  // fillElem cannot be null: passing null for this parameter will
+  // result in a RuntimeException with the message "Cannot set
+  // elements to null".
+  //
+  // Runtime: O(1) (worst-case)
+  public PersistentBoard(int minRow, int maxRow, int minCol, int maxCol, T fillElem){
+	  this(minRow, maxRow, minCol, maxCol, fillElem, null, minRow, minCol,
+			  LEAF_BITS, 0, new ArrayList<RowColElem<T>>());
+	  if (fillElem == null)
+		  throw new RuntimeException("Cannot set elements to null");
+  }
+
+  // Convenience 1-arg constructor, creates a single cell board with
+  // given fill element. The initial extent of the board is a single
+  // element at 0,0.
+  public PersistentBoard(T fillElem){
+	  this(0,0,0,0,fillElem);
+  }
+
+  // Used by set() to make a new version of a board
+  private PersistentBoard(int minRow, int maxRow, int minCol, int maxCol,
+		  T fillElem, Node root, long rootRow, long rootCol, int rootBits,
+		  int size, List<RowColElem<T>> longest){
+	  this.minRow = minRow;
+	  this.maxRow = maxRow;
+	  this.minCol = minCol;
+	  this.maxCol = maxCol;
+	  this.fillElem = fillElem;
+	  this.root = root;
+	  this.rootRow = rootRow;
+	  this.rootCol = rootCol;
+	  this.rootBits = rootBits;
+	  this.size = size;
+	  this.longest = longest;
+  }
+
+  // Create a persistent board with the same extent, fill element and
+  // elements as board. Elements are added in row/col order so ties for
+  // the longest sequence may be broken differently than on board.
+  //
+  // Target Complexity: O(R*C + E * log N)
+  //   R: number of rows
+  //   C: number of columns
+  public static <T> PersistentBoard<T> copyOf(ExpandableBoard<T> board){
+	  PersistentBoard<T> copy = new PersistentBoard<T>(board.getMinRow(),
+			  board.getMaxRow(), board.getMinCol(), board.getMaxCol(),
+			  board.getFillElem());
+	  for (int i=board.getMinRow(); i<=board.getMaxRow(); i++){
+		  for (int j=board.getMinCol(); j<=board.getMaxCol(); j++){
+			  copy = copy.set(i, j, board.get(i,j));
+		  }
+	  }
+	  return copy;
+  }
+
+  // Access the extent of the board: all explicitly set elements are
+  // within the bounds established by these four methods.
+  //
+  // Target complexity: O(1)
+  public int getMinRow(){
+	  return minRow;
+  }
+  public int getMaxRow(){
+	  return maxRow;
+  }
+  public int getMinCol(){
+	  return minCol;
+  }
+  public int getMaxCol(){
+	  return maxCol;
+  }
+
+  // Retrieve the fill element for the board.
+  public T getFillElem(){
+	  return fillElem;
+  }
+
+  // Return a board that is the same as this one but with a different
+  // fill element.  The elements are shared with this board.
+  //
+  // Target complexity: O(1) (worst-case)
+  public PersistentBoard<T> withFillElem(T f){
+	  if (f == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  return new PersistentBoard<T>(minRow, maxRow, minCol, maxCol, f,
+			  root, rootRow, rootCol, rootBits, size, longest);
+  }
+
+  // Return how many elements are set on the board.
+  public int size(){
+	  return size;
+  }
+
+  // Element stored at row/col or null if it has not been set
+  @SuppressWarnings("unchecked")
+  private T cell(int row, int col){
+	  long r = row - rootRow, c = col - rootCol;
+	  long width = 1L << rootBits;
+	  if ((r < 0)||(r >= width)||(c < 0)||(c >= width))
+		  return null;
+	  Node node = root;
+	  for (int bits=rootBits; (node != null)&&(bits > LEAF_BITS); bits--){
+		  node = node.quadrants[quadrant(r, c, bits)];
+	  }
+	  if (node == null)
+		  return null;
+	  return (T) node.cells[leafIndex(r, c)];
+  }
+
+  // Quadrant of a node with 2^bits cells on a side that holds the cell
+  // r/c relative to the root
+  private static int quadrant(long r, long c, int bits){
+	  int half = bits - 1;
+	  return (int) ((((r >> half) & 1) << 1) | ((c >> half) & 1));
+  }
+
+  // Position of the cell r/c relative to the root inside its leaf
+  private static int leafIndex(long r, long c){
+	  return (int) (((r & LEAF_MASK) << LEAF_BITS) | (c & LEAF_MASK));
+  }
+
+  // Copy of node, which covers 2^bits cells on a side, with x stored at
+  // r/c relative to the root. Missing nodes on the way are created.
+  private static Node with(Node node, int bits, long r, long c, Object x){
+	  if (bits == LEAF_BITS){
+		  Object[] cells = (node == null) ? new Object[LEAF_SIZE*LEAF_SIZE]
+				  : node.cells.clone();
+		  cells[leafIndex(r, c)] = x;
+		  return new Node(null, cells);
+	  }
+	  Node[] quadrants = (node == null) ? new Node[4] : node.quadrants.clone();
+	  int q = quadrant(r, c, bits);
+	  quadrants[q] = with(quadrants[q], bits-1, r, c, x);
+	  return new Node(quadrants, null);
+  }
+
+  // Retrieve an element at virtual row/col specified. Any row/col may
+  // be requested. If it is beyond the extent of the board determined
+  // by min/max row/col, the fill element is returned.  If the element
+  // has not been explicitly set, the fill element is returned.
+  //
+  // Complexity: O(log N)
+  //  N: The width of the area spanned by the elements
+  public T get(int row, int col){
+	  if ((row > maxRow)||(row < minRow)||(col > maxCol)||(col < minCol))
+		  return fillElem;
+	  T x = cell(row,col);
+	  if (x == null)
+		  return fillElem;
+	  return x;
+  }
+
+  // Return a board with element at row/col position set to x.  This
+  // board is not changed.  The extent of the new board is expanded to
+  // include row/col and its longest sequence reflects the new element.
+  // Once an element is set, it cannot be set again; attempts to do so
+  // raise a runtime exception with the message: "Element 4 -2 already
+  // set to XX" where the row/col indices and string representation of
+  // the element are adjusted to match the call made.  Setting an
+  // element to the fill element of board returns this board.  It is
+  // not allowed to set elements of the board to be null. Attempting
+  // to do so will generate a RuntimeException with the message
+  // "Cannot set elements to null"
+  //
+  // Target Complexity: O(log N + K)
+  //  N: The width of the area spanned by the elements
+  //  K: length of the runs through row/col
+  public PersistentBoard<T> set(int row, int col, T x){
+	  if (x == null)
+		  throw new RuntimeException("Cannot set elements to null");
+	  if (x.equals(fillElem))
+		  return this;
+	  T prev = cell(row,col);
+	  if (prev != null){
+		  throw new RuntimeException("Element "+row+" "+col+" already set to "
+				  +prev.toString());
+	  }
+	  //grow the root until its square includes row/col, putting the old
+	  //root in the quadrant facing row/col
+	  Node newRoot = root;
+	  long newRootRow = rootRow, newRootCol = rootCol;
+	  int newRootBits = rootBits;
+	  while ((row < newRootRow)||(row >= newRootRow + (1L << newRootBits))
+			  ||(col < newRootCol)||(col >= newRootCol + (1L << newRootBits))){
+		  long width = 1L << newRootBits;
+		  int q = 0;
+		  if (row < newRootRow){
+			  newRootRow -= width;
+			  q |= 2;
+		  }
+		  if (col < newRootCol){
+			  newRootCol -= width;
+			  q |= 1;
+		  }
+		  if (newRoot != null){
+			  Node[] quadrants = new Node[4];
+			  quadrants[q] = newRoot;
+			  newRoot = new Node(quadrants, null);
+		  }
+		  newRootBits++;
+	  }
+	  newRoot = with(newRoot, newRootBits, row - newRootRow, col - newRootCol, x);
+	  PersistentBoard<T> next = new PersistentBoard<T>(Math.min(minRow,row),
+			  Math.max(maxRow,row), Math.min(minCol,col), Math.max(maxCol,col),
+			  fillElem, newRoot, newRootRow, newRootCol, newRootBits, size+1,
+			  longest);
+	  return next.withLongestThrough(row, col, x);
+  }
+
+  // Retrieve the longest sequence present on the board. If there is a
+  // tie, the earliest longest sequence to appear on the board is
+  // returned.  The list returned is a copy so that it can be changed
+  // without affecting the board.
+  //
+  // Target Complexity: O(L) (worst case)
+  //  L: length of the longest sequence
+  public List< RowColElem<T> > getLongestSequence(){
+	  return new ArrayList<RowColElem<T>>(longest);
+  }
+
+  // This board, or a copy of it with a new longest sequence if one of
+  // the four lines through row/col is strictly longer than the current
+  // one so ties keep the earliest sequence.
+  //
+  // Target Complexity: O(K log N)
+  //  K: length of the runs through row/col
+  private PersistentBoard<T> withLongestThrough(int row, int col, T x){
+	  List<RowColElem<T>> best = longest;
+	  for (int d=0; d<DIRECTIONS.length; d++){
+		  int dRow = DIRECTIONS[d][0], dCol = DIRECTIONS[d][1];
+		  int back = countRun(row, col, -dRow, -dCol, x);
+		  int length = back + 1 + countRun(row, col, dRow, dCol, x);
+		  if (length > best.size()){
+			  best = new ArrayList<RowColElem<T>>(length);
+			  for (int k=-back; k<length-back; k++){
+				  best.add(new RowColElem<T>(row+k*dRow, col+k*dCol, x));
+			  }
+		  }
+	  }
+	  if (best == longest)
+		  return this;
+	  return new PersistentBoard<T>(minRow, maxRow, minCol, maxCol, fillElem,
+			  root, rootRow, rootCol, rootBits, size, best);
+  }
+
+  // Count the cells past row/col in direction dRow/dCol which hold an
+  // element equal to x.
+  private int countRun(int row, int col, int dRow, int dCol, T x){
+	  int count = 0;
+	  int i = row+dRow, j = col+dCol;
+	  while (x.equals(cell(i,j))){
+		  count++;
+		  i += dRow;
+		  j += dCol;
+	  }
+	  return count;
+  }
+
+  // toString() - create a pretty representation of board in the same
+  // format as the other boards.
+  //
+  // Target Complexity: O(R*C*log N)
+  //   R: number of rows
+  //   C: number of columns
+  public String toString(){
+	  StringBuilder builder = new StringBuilder();
+
+	  //initial top left bar and column numbers
+	  builder.append("    |");
+	  for (int j=minCol; j<=maxCol; j++){
+		  builder.append(String.format("%1$3d|", j));
+	  }
+	  //puts in divider line
+	  builder.append("\n    +");
+	  for (int j=minCol; j<=maxCol; j++){
+		  builder.append("---+");
+	  }
+	  for (int i=minRow; i<=maxRow; i++){
+		  //Adds new line and row number
+		  builder.append("\n");
+		  builder.append(String.format("%1$3d |",i));
+		  for (int j=minCol; j<=maxCol; j++){
+			  builder.append(String.format("%1$3s|", get(i,j)));
+		  }
+		  //puts in divider line
+		  builder.append("\n    +");
+		  for (int j=minCol; j<=maxCol; j++){
+			  builder.append("---+");
+		  }
+	  }
+	  builder.append("\n");
+	  return builder.toString();
+  }
+
+}
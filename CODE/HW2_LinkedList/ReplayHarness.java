@@ -0,0 +1,332 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+// Replays scripts of moves against boards without a console, to see
+// how the board implementations behave on the same games.
+//
+//   java ReplayHarness gen <dense|sparse|expand> <moves> [seed]
+//   java ReplayHarness run <script> <iterations> <BoardClass>...
+//
+// gen prints a script.  A script has one operation per line, the
+// console commands with the symbol to set given explicitly:
+//
+//   s 3 -2 X     set 3,-2 to X
+//   e 3 8        expand the board to include 3,8
+//   u            undo the last set
+//   r            redo the last undone set
+//
+// Blank lines and lines starting with # are skipped.  dense scripts
+// play near earlier moves like a real game, sparse scripts scatter
+// small clusters of moves over a wide area and expand scripts keep
+// expanding the board in every direction between sets, playing at the
+// new edge.
+//
+// run replays the script iterations times on a new board of each named
+// class, made with its 1-arg fill element constructor; add the
+// directories holding the classes to the classpath to compare boards
+// from different directories.  Each board is warmed up first.  For
+// each board it reports the throughput of the whole script, the bytes
+// allocated per operation where the JVM can count them, and the
+// latency percentiles of each kind of operation, each operation timed
+// on its own.  Operations the board rejects are counted as failed;
+// expansions are skipped on boards without an expandToInclude method.
+public class ReplayHarness{
+
+	//Operations
+	private static final int SET = 0, EXPAND = 1, UNDO = 2, REDO = 3;
+	private static final String[] NAMES = {"set", "expand", "undo", "redo"};
+	private static final int WARMUP = 5;
+
+	// A parsed script: one entry of each array per operation
+	static class Script{
+		int[] ops, rows, cols, symbols;
+		List<String> symbolNames = new ArrayList<String>();
+		int size = 0;
+
+		void add(int op, int row, int col, int symbol){
+			if (ops == null || size == ops.length){
+				int n = (ops == null) ? 1024 : 2*size;
+				ops = (ops == null) ? new int[n] : Arrays.copyOf(ops, n);
+				rows = (rows == null) ? new int[n] : Arrays.copyOf(rows, n);
+				cols = (cols == null) ? new int[n] : Arrays.copyOf(cols, n);
+				symbols = (symbols == null) ? new int[n] : Arrays.copyOf(symbols, n);
+			}
+			ops[size] = op;
+			rows[size] = row;
+			cols[size] = col;
+			symbols[size] = symbol;
+			size++;
+		}
+	}
+
+  public static void main(String[] args) throws Exception{
+	  if (args.length >= 3 && args[0].equals("gen")){
+		  long seed = (args.length > 3) ? Long.parseLong(args[3]) : 1;
+		  System.out.print(generate(args[1], Integer.parseInt(args[2]), seed));
+	  }
+	  else if (args.length >= 4 && args[0].equals("run")){
+		  Script script = parse(new String(Files.readAllBytes(Paths.get(args[1])),
+				  StandardCharsets.UTF_8));
+		  int iterations = Integer.parseInt(args[2]);
+		  for (int i=3; i<args.length; i++){
+			  System.out.print(run(script, Class.forName(args[i]), iterations));
+		  }
+	  }
+	  else{
+		  System.out.println("usage: java ReplayHarness gen <dense|sparse|expand> <moves> [seed]");
+		  System.out.println("       java ReplayHarness run <script> <iterations> <BoardClass>...");
+	  }
+  }
+
+  // Parse the text of a script. Symbols are numbered in the order they
+  // first appear.
+  public static Script parse(String text){
+	  Script script = new Script();
+	  int lineNumber = 0;
+	  for (String line : text.split("\n")){
+		  lineNumber++;
+		  line = line.trim();
+		  if (line.isEmpty() || line.startsWith("#"))
+			  continue;
+		  String[] words = line.split("\\s+");
+		  try{
+			  switch (words[0]){
+			  case "s":
+				  int symbol = script.symbolNames.indexOf(words[3]);
+				  if (symbol < 0){
+					  symbol = script.symbolNames.size();
+					  script.symbolNames.add(words[3]);
+				  }
+				  script.add(SET, Integer.parseInt(words[1]), Integer.parseInt(words[2]), symbol);
+				  break;
+			  case "e":
+				  script.add(EXPAND, Integer.parseInt(words[1]), Integer.parseInt(words[2]), 0);
+				  break;
+			  case "u":
+				  script.add(UNDO, 0, 0, 0);
+				  break;
+			  case "r":
+				  script.add(REDO, 0, 0, 0);
+				  break;
+			  default:
+				  throw new RuntimeException("Unknown operation");
+			  }
+		  }
+		  catch (RuntimeException e){
+			  throw new RuntimeException("Bad script line "+lineNumber+": "+line);
+		  }
+	  }
+	  return script;
+  }
+
+  // Replay script on boardClass and describe how it went
+  public static String run(Script script, Class<?> boardClass, int iterations)
+		  throws ReflectiveOperationException{
+	  Method expand = null;
+	  try{
+		  expand = boardClass.getMethod("expandToInclude", int.class, int.class);
+	  }
+	  catch (NoSuchMethodException e){
+		  //expansions are skipped
+	  }
+	  ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	  com.sun.management.ThreadMXBean allocations =
+		  (threads instanceof com.sun.management.ThreadMXBean)
+		  ? (com.sun.management.ThreadMXBean) threads : null;
+	  long threadId = Thread.currentThread().getId();
+
+	  long[][] latencies = new long[NAMES.length][];
+	  int[] counts = new int[NAMES.length];
+	  for (int i=0; i<script.size; i++){
+		  counts[script.ops[i]]++;
+	  }
+	  for (int op=0; op<NAMES.length; op++){
+		  latencies[op] = new long[counts[op]*iterations];
+	  }
+	  int[] filled = new int[NAMES.length];
+	  long totalNanos = 0, totalBytes = 0;
+	  int failed = 0;
+	  for (int it=-WARMUP; it<iterations; it++){
+		  //a whole pass for throughput and allocation, then one timing each operation
+		  ExpandableBoard<String> board = newBoard(boardClass);
+		  long bytes = (allocations == null) ? 0 : allocations.getThreadAllocatedBytes(threadId);
+		  long start = System.nanoTime();
+		  int failures = replay(script, board, expand, null, null);
+		  long nanos = System.nanoTime() - start;
+		  if (allocations != null)
+			  bytes = allocations.getThreadAllocatedBytes(threadId) - bytes;
+		  board = newBoard(boardClass);
+		  replay(script, board, expand, (it < 0) ? null : latencies, filled);
+		  if (it >= 0){
+			  totalNanos += nanos;
+			  totalBytes += bytes;
+			  failed += failures;
+		  }
+	  }
+
+	  StringBuilder report = new StringBuilder();
+	  long ops = (long) script.size * iterations;
+	  report.append(String.format("%s: %d ops in %.2f ms, %.0f ops/s", boardClass.getName(),
+			  ops, totalNanos/1e6, ops/(totalNanos/1e9)));
+	  if (allocations != null)
+		  report.append(String.format(", %.1f bytes/op", (double) totalBytes/ops));
+	  report.append(String.format(", %d failed\n", failed));
+	  report.append(String.format("  %-8s %9s %9s %9s %9s %9s\n",
+			  "op", "count", "p50 ns", "p90 ns", "p99 ns", "max ns"));
+	  for (int op=0; op<NAMES.length; op++){
+		  long[] l = Arrays.copyOf(latencies[op], filled[op]);
+		  if (l.length == 0)
+			  continue;
+		  Arrays.sort(l);
+		  report.append(String.format("  %-8s %9d %9d %9d %9d %9d\n", NAMES[op], l.length,
+				  percentile(l, 0.50), percentile(l, 0.90), percentile(l, 0.99), l[l.length-1]));
+	  }
+	  return report.toString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ExpandableBoard<String> newBoard(Class<?> boardClass)
+		  throws ReflectiveOperationException{
+	  return (ExpandableBoard<String>) boardClass.getConstructor(Object.class).newInstance("-");
+  }
+
+  private static long percentile(long[] sorted, double p){
+	  int i = (int) Math.ceil(p * sorted.length) - 1;
+	  return sorted[Math.max(0, Math.min(i, sorted.length-1))];
+  }
+
+  // Replay script on board and return how many operations failed. When
+  // latencies is given each operation is timed and its time added to
+  // the row of its kind, filled[op] counting the times added.
+  private static int replay(Script script, ExpandableBoard<String> board, Method expand,
+		  long[][] latencies, int[] filled) throws ReflectiveOperationException{
+	  String[] symbols = script.symbolNames.toArray(new String[0]);
+	  int failures = 0;
+	  for (int i=0; i<script.size; i++){
+		  int op = script.ops[i];
+		  long start = (latencies == null) ? 0 : System.nanoTime();
+		  try{
+			  switch (op){
+			  case SET:
+				  board.set(script.rows[i], script.cols[i], symbols[script.symbols[i]]);
+				  break;
+			  case EXPAND:
+				  if (expand != null)
+					  expandToInclude(expand, board, script.rows[i], script.cols[i]);
+				  break;
+			  case UNDO:
+				  board.undoSet();
+				  break;
+			  case REDO:
+				  board.redoSet();
+				  break;
+			  }
+		  }
+		  catch (RuntimeException e){
+			  failures++;
+		  }
+		  if (latencies != null)
+			  latencies[op][filled[op]++] = System.nanoTime() - start;
+	  }
+	  return failures;
+  }
+
+  // Call expand on board, raising what it raises
+  private static void expandToInclude(Method expand, ExpandableBoard<String> board,
+		  int row, int col) throws ReflectiveOperationException{
+	  try{
+		  expand.invoke(board, row, col);
+	  }
+	  catch (InvocationTargetException e){
+		  if (e.getCause() instanceof RuntimeException)
+			  throw (RuntimeException) e.getCause();
+		  if (e.getCause() instanceof Error)
+			  throw (Error) e.getCause();
+		  throw e;
+	  }
+  }
+
+  // Text of a script of about moves sets of the given kind of workload
+  public static String generate(String kind, int moves, long seed){
+	  Random random = new Random(seed);
+	  StringBuilder out = new StringBuilder();
+	  out.append("# ").append(kind).append(" workload, ").append(moves)
+		  .append(" moves, seed ").append(seed).append('\n');
+	  //cells set and not undone, cells that can be redone
+	  java.util.HashSet<Long> taken = new java.util.HashSet<Long>();
+	  List<long[]> applied = new ArrayList<long[]>();
+	  List<long[]> undone = new ArrayList<long[]>();
+	  String[] players = {"X", "O"};
+	  int lastRow = 0, lastCol = 0;
+	  int reach = 0;
+	  for (int m=0; m<moves; m++){
+		  int roll = random.nextInt(100);
+		  if (roll < 4 && !applied.isEmpty()){
+			  long[] move = applied.remove(applied.size()-1);
+			  taken.remove(key((int) move[0], (int) move[1]));
+			  undone.add(move);
+			  out.append("u\n");
+			  continue;
+		  }
+		  if (roll < 6 && !undone.isEmpty()){
+			  long[] move = undone.remove(undone.size()-1);
+			  taken.add(key((int) move[0], (int) move[1]));
+			  applied.add(move);
+			  out.append("r\n");
+			  continue;
+		  }
+		  int row, col;
+		  if (kind.equals("sparse")){
+			  //a new cluster now and then, anywhere in a wide area
+			  if (random.nextInt(20) == 0){
+				  lastRow = random.nextInt(2001) - 1000;
+				  lastCol = random.nextInt(2001) - 1000;
+			  }
+		  }
+		  else if (kind.equals("expand")){
+			  //push the board out on one side before each set, one
+			  //more row or column every 8 moves
+			  if (m % 8 == 0)
+				  reach++;
+			  int side = random.nextInt(4);
+			  int r = (side == 0) ? -reach : (side == 1) ? reach : random.nextInt(2*reach+1) - reach;
+			  int c = (side == 2) ? -reach : (side == 3) ? reach : random.nextInt(2*reach+1) - reach;
+			  out.append("e ").append(r).append(' ').append(c).append('\n');
+			  lastRow = r;
+			  lastCol = c;
+		  }
+		  else if (!kind.equals("dense"))
+			  throw new RuntimeException("Unknown workload "+kind);
+		  //an empty cell near the last move
+		  int tries = 0;
+		  do{
+			  int spread = 2 + tries/8;
+			  row = lastRow + random.nextInt(2*spread+1) - spread;
+			  col = lastCol + random.nextInt(2*spread+1) - spread;
+			  tries++;
+		  } while (taken.contains(key(row,col)));
+		  //a new set cancels the redos
+		  undone.clear();
+		  taken.add(key(row,col));
+		  applied.add(new long[]{row, col});
+		  out.append("s ").append(row).append(' ').append(col).append(' ')
+			  .append(players[m % 2]).append('\n');
+		  lastRow = row;
+		  lastCol = col;
+	  }
+	  return out.toString();
+  }
+
+  private static long key(int row, int col){
+	  return ((long)row << 32) | (col & 0xFFFFFFFFL);
+  }
+
+}